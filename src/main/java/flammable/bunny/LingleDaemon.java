@@ -0,0 +1,86 @@
+package flammable.bunny;
+
+import flammable.bunny.core.*;
+
+import java.io.IOException;
+
+/**
+ * Headless entrypoint for the background process waywall keeps alive.
+ * Only touches core classes, so AWT, Swing and FlatLaf are never loaded. When another Lingle
+ * already owns ADW the daemon hands off to it and waits to take over once that process exits.
+ */
+public final class LingleDaemon {
+
+    private LingleDaemon() {}
+
+    public static void main(String[] args) {
+        if ("root".equals(System.getProperty("user.name"))) {
+            ErrorCodes.exit(ErrorCodes.PERMISSION_ERROR, "Please do not run Lingle with sudo.");
+        }
+
+        LingleLogger.setSubsystem("daemon");
+        if (!InstanceLock.acquire()) {
+            handOffToOwner();
+            // Stay around as a standby: when the owner (usually the GUI) closes, ADW moves here
+            if (!InstanceLock.awaitOwnership()) return;
+            LingleLogger.logInfo("Previous Lingle process exited; daemon taking over");
+        }
+
+        LogFileAppender.start("lingle-daemon");
+
+        try {
+            TmpfsScriptManager.ensureScriptsPresent();
+        } catch (IOException e) {
+            ErrorCodes.exit(ErrorCodes.IO_ERROR, "Failed to create scripts: " + e.getMessage());
+        }
+
+        try {
+            LingleState.loadState();
+        } catch (IOException e) {
+            ErrorCodes.exit(ErrorCodes.CONFIG_ERROR, "Failed to load configuration: " + e.getMessage());
+        }
+
+        try {
+            LinkInstancesService.preparePracticeMapLinks();
+        } catch (IOException e) {
+            System.err.println("[WARNING] Failed to prepare practice map links: " + e.getMessage());
+        }
+
+        try {
+            LingleControlServer.start();
+        } catch (IOException e) {
+            System.err.println("[WARNING] Failed to open control socket: " + e.getMessage());
+        }
+
+        try {
+            AdwManager.startAdwIfNeeded();
+        } catch (Exception e) {
+            System.err.println("[WARNING] Failed to start ADW service: " + e.getMessage());
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            AdwManager.stopAdwQuietly();
+            if (LingleState.worldBopperEnabled) {
+                try {
+                    WorldBopperManager.runOnce();
+                } catch (Exception ignored) {}
+            }
+        }));
+
+        System.out.println("Running Lingle in daemon mode");
+        try {
+            Thread.currentThread().join();
+        } catch (InterruptedException ignored) {}
+    }
+
+    // Another Lingle already owns ADW; ask it to pick up the current config instead of starting a second loop
+    private static void handOffToOwner() {
+        long owner = InstanceLock.getOwnerPid();
+        try {
+            String reply = LingleControlClient.send("RELOAD");
+            System.out.println("Lingle is already running (pid " + owner + "), handed off: " + reply);
+        } catch (IOException e) {
+            System.err.println("[WARNING] Lingle is already running (pid " + owner + ") but did not answer: " + e.getMessage());
+        }
+    }
+}
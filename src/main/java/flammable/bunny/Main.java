@@ -11,6 +11,37 @@ import javax.swing.SwingUtilities;
 public class Main {
     public static void main(String[] args) {
 
+        // The background copy started from init.lua must not pull in AWT/Swing/FlatLaf
+        if (args.length > 0 && ("--daemon".equals(args[0]) || "--nogui".equals(args[0]))) {
+            LingleDaemon.main(args);
+            return;
+        }
+        if (args.length > 0 && "--send".equals(args[0])) {
+            LingleControlClient.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        if (args.length > 0 && "--rollback".equals(args[0])) {
+            try {
+                Updater.rollback();
+                System.out.println("Rolled back to the previous Lingle version.");
+                System.exit(ErrorCodes.SUCCESS);
+            } catch (IOException e) {
+                ErrorCodes.exit(ErrorCodes.UPDATE_ERROR, "Rollback failed: " + e.getMessage());
+            }
+        }
+
+        if (args.length > 0 && "--verify-submission".equals(args[0])) {
+            if (args.length < 2) ErrorCodes.exit(ErrorCodes.MISUSE, "Usage: --verify-submission <package.zip>");
+            try {
+                SubmissionVerifier.Report report = SubmissionVerifier.verify(java.nio.file.Path.of(args[1]));
+                System.out.println(report.describe());
+                System.exit(report.isValid() ? ErrorCodes.SUCCESS : ErrorCodes.GENERAL_ERROR);
+            } catch (IOException e) {
+                ErrorCodes.exit(ErrorCodes.IO_ERROR, "Could not read " + args[1] + ": " + e.getMessage());
+            }
+        }
+
         FlatDarkLaf.setup();
 
         String userName = System.getProperty("user.name");
@@ -19,11 +50,24 @@ public class Main {
             return;
         }
 
+        LogFileAppender.start("lingle-gui");
+        // The EDT logs throughout setup and must never wait on the log pump
+        LingleLogger.exemptFromBackpressure(SwingUtilities::isEventDispatchThread);
+
+        // A verified update staged by the last run is swapped in before anything else starts
+        Updater.awaitPreviousInstance();
+        try {
+            if (Updater.applyPendingUpdate()) Updater.restart();
+        } catch (IOException e) {
+            LingleLogger.logError("Could not apply staged update", e);
+        }
+
         DistroDetector.detectAndSaveDistro();
 
-        boolean nogui = args.length > 0 && "--nogui".equals(args[0]);
+        // A daemon started from init.lua may already own ADW; the GUI then forwards to it
+        boolean owner = InstanceLock.acquire();
 
-        if (!nogui && System.getenv("DISPLAY") == null && System.getenv("WAYLAND_DISPLAY") == null) {
+        if (System.getenv("DISPLAY") == null && System.getenv("WAYLAND_DISPLAY") == null) {
             ErrorCodes.exit(ErrorCodes.MISUSE, "No DISPLAY/WAYLAND_DISPLAY found. This GUI requires a graphical session.");
         }
 
@@ -31,22 +75,14 @@ public class Main {
             TmpfsScriptManager.ensureScriptsPresent();
         } catch (IOException e) {
             String msg = "Failed to create scripts: " + e.getMessage();
-            if (nogui) {
-                ErrorCodes.exit(ErrorCodes.IO_ERROR, msg);
-            } else {
-                ErrorCodes.exitWithDialog(null, ErrorCodes.IO_ERROR, "Initialization Error", msg);
-            }
+            ErrorCodes.exitWithDialog(null, ErrorCodes.IO_ERROR, "Initialization Error", msg);
         }
 
         try {
             LingleState.loadState();
         } catch (IOException e) {
             String msg = "Failed to load configuration: " + e.getMessage();
-            if (nogui) {
-                ErrorCodes.exit(ErrorCodes.CONFIG_ERROR, msg);
-            } else {
-                ErrorCodes.exitWithDialog(null, ErrorCodes.CONFIG_ERROR, "Configuration Error", msg);
-            }
+            ErrorCodes.exitWithDialog(null, ErrorCodes.CONFIG_ERROR, "Configuration Error", msg);
         }
 
         try {
@@ -59,11 +95,26 @@ public class Main {
             LinkInstancesService.preparePracticeMapLinks();
         } catch (IOException e) {
             String msg = "Failed to prepare practice map links: " + e.getMessage();
-            if (!nogui) {
-                ErrorCodes.showError(null, ErrorCodes.SYMLINK_ERROR, msg);
-            } else {
-                System.err.println("[WARNING] " + msg);
+            ErrorCodes.showError(null, ErrorCodes.SYMLINK_ERROR, msg);
+        }
+
+        if (owner) {
+            try {
+                LingleControlServer.start();
+            } catch (IOException e) {
+                System.err.println("[WARNING] Failed to open control socket: " + e.getMessage());
             }
+        } else {
+            // The daemon owns ADW for now; if it exits first, this window takes over
+            InstanceLock.takeOverWhenReleased(() -> {
+                try {
+                    LingleState.loadState();
+                    LingleControlServer.start();
+                } catch (IOException e) {
+                    LingleLogger.logError("Failed to take over from the previous Lingle process", e);
+                }
+                AdwManager.startAdwIfNeeded();
+            });
         }
 
         Updater.checkForUpdates();
@@ -72,11 +123,7 @@ public class Main {
             AdwManager.startAdwIfNeeded();
         } catch (Exception e) {
             String msg = "Failed to start ADW service: " + e.getMessage();
-            if (!nogui) {
-                ErrorCodes.showError(null, ErrorCodes.ADW_ERROR, msg);
-            } else {
-                System.err.println("[WARNING] " + msg);
-            }
+            ErrorCodes.showError(null, ErrorCodes.ADW_ERROR, msg);
         }
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
@@ -88,14 +135,6 @@ public class Main {
             }
         }));
 
-        if (nogui) {
-            System.out.println("Running Lingle in nogui mode");
-            try {
-                Thread.currentThread().join();
-            } catch (InterruptedException ignored) {}
-            return;
-        }
-
         System.setProperty("awt.useSystemAAFontSettings", "on");
         System.setProperty("swing.aatext", "true");
         SwingUtilities.invokeLater(LingleUI::new);
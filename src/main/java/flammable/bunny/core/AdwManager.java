@@ -3,43 +3,130 @@ package flammable.bunny.core;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class AdwManager {
+    private static final String SCRIPT_NAME = "auto_delete_worlds_tmpfs.sh";
     private static Process adwProcess = null;
 
-    public static void startAdwIfNeeded() {
-        if (!LingleState.adwEnabled || !LingleState.enabled) return;
-        stopAdwQuietly();
+    // Forwarding is a socket round-trip and the GUI calls in from the EDT, so it runs here instead
+    private static final ExecutorService FORWARDER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "lingle-adw-forward");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final AtomicBoolean forwardQueued = new AtomicBoolean();
+
+    /**
+     * Brings the deletion loop in line with LingleState. Only the instance lock owner runs it;
+     * any other Lingle process forwards the request so exactly one loop is ever active.
+     */
+    public static synchronized void startAdwIfNeeded() {
+        if (!InstanceLock.isOwner()) {
+            forwardToOwner();
+            return;
+        }
+
+        stopAdwProcess();
+        if (!LingleState.adwEnabled || !LingleState.enabled) {
+            SubmissionStager.stop();
+            return;
+        }
+        // ADW deletes worlds a submission still needs; the stager keeps them for as long as it runs,
+        // and keeps running across restarts of the loop so nothing it staged is lost
+        SubmissionStager.start();
 
         try {
             Path home = Path.of(System.getProperty("user.home"));
             Path scriptsDir = home.resolve(".local/share/lingle/scripts");
             Files.createDirectories(scriptsDir);
 
-            Path script = scriptsDir.resolve("auto_delete_worlds_tmpfs.sh");
+            Path script = scriptsDir.resolve(SCRIPT_NAME);
             Files.writeString(script, generateScript(home), StandardCharsets.UTF_8);
             script.toFile().setExecutable(true);
+            killStaleLoop(lockPath(home));
 
-            adwProcess = new ProcessBuilder("/bin/bash", script.toString())
+            Process started = new ProcessBuilder("/bin/bash", script.toString())
                     .redirectOutput(ProcessBuilder.Redirect.DISCARD)
                     .redirectError(ProcessBuilder.Redirect.DISCARD)
                     .start();
+            adwProcess = started;
+            started.onExit().thenAccept(p -> {
+                if (p.exitValue() == ErrorCodes.ADW_ERROR) {
+                    LingleLogger.logError("ADW did not start: another deletion loop still holds " + lockPath(home)
+                            + " (error " + ErrorCodes.ADW_ERROR + ")");
+                }
+            });
         } catch (IOException ignored) {
             adwProcess = null;
         }
     }
 
+    private static Path lockPath(Path home) {
+        return home.resolve(".local/share/lingle/adw.lock");
+    }
+
+    /**
+     * A loop whose Lingle was SIGKILLed keeps adw.lock through its own fd 9 until its next wake-up,
+     * which can be a long sleep away. The loop writes its pid into the lock file, so it is stopped here.
+     */
+    private static void killStaleLoop(Path lock) {
+        long pid;
+        try {
+            pid = Long.parseLong(Files.readString(lock).trim());
+        } catch (IOException | NumberFormatException e) {
+            return;
+        }
+        ProcessHandle.of(pid)
+                .filter(p -> p.info().commandLine().orElse("").contains(SCRIPT_NAME))
+                .ifPresent(p -> {
+                    LingleLogger.logWarn("Stopping leftover ADW loop (pid " + pid + ")");
+                    p.destroy();
+                    try {
+                        p.onExit().get(2, TimeUnit.SECONDS);
+                    } catch (Exception e) {
+                        p.destroyForcibly();
+                    }
+                });
+    }
+
+    // RELOAD re-reads the whole config, so requests made while one is still queued share it
+    private static void forwardToOwner() {
+        if (!forwardQueued.compareAndSet(false, true)) return;
+        FORWARDER.execute(() -> {
+            forwardQueued.set(false);
+            try {
+                String reply = LingleControlClient.send("RELOAD");
+                LingleLogger.logInfo("ADW handled by running Lingle (pid " + InstanceLock.getOwnerPid() + "): " + reply);
+            } catch (IOException e) {
+                LingleLogger.logError("Could not reach the Lingle process that owns ADW: " + e.getMessage());
+            }
+        });
+    }
+
     private static String generateScript(Path home) {
         long pid = ProcessHandle.current().pid();
         int X = Math.max(0, LingleState.instanceCount);
         int S = Math.max(1, LingleState.adwIntervalSeconds);
         Path cfg = home.resolve(".local/share/lingle/config.json");
+        Path lock = lockPath(home);
 
+        // flock is a second line of defence against a second loop. The sleep gets no fd 9, but the loop
+        // itself holds the lock for as long as it lives; killStaleLoop() finds a leftover one through
+        // the pid written below. Failing to lock exits with ADW_ERROR so the owner reports it
         return "#!/bin/bash\nset -euo pipefail\n" +
                 "APP_PID=" + pid + "\n" +
                 "CFG=\"" + cfg + "\"\n" +
                 "USER_HOME=\"" + home + "\"\n" +
                 "X=" + X + "\nSLEEP_SECS=" + S + "\n" +
+                "if command -v flock >/dev/null 2>&1; then\n" +
+                "  exec 9<>\"" + lock + "\"\n" +
+                "  flock -w 5 9 || exit " + ErrorCodes.ADW_ERROR + "\n" +
+                "  echo $$ > \"" + lock + "\"\n" +
+                "fi\n" +
                 "while true; do\n" +
                 "  if [ ! -d /proc/${APP_PID} ]; then exit 0; fi\n" +
                 "  if ! grep -q '\"adw\": true' \"$CFG\"; then exit 0; fi\n" +
@@ -50,11 +137,20 @@ public class AdwManager {
                 "      rm -rf \"${LDIR}/${save}\"\n" +
                 "    done\n" +
                 "  done\n" +
-                "  sleep ${SLEEP_SECS}\n" +
+                "  sleep ${SLEEP_SECS} 9>&-\n" +
                 "done\n";
     }
 
+    public static boolean isRunning() {
+        return adwProcess != null && adwProcess.isAlive();
+    }
+
     public static void stopAdwQuietly() {
+        SubmissionStager.stop();
+        stopAdwProcess();
+    }
+
+    private static void stopAdwProcess() {
         try {
             if (adwProcess != null) {
                 adwProcess.destroy();
@@ -7,22 +7,22 @@ import java.util.List;
 public class ChaoticAURInstaller {
 
 
-    public static void installOBS() throws IOException, InterruptedException {
+    public static final String OBS_PACKAGE = "chaotic-aur/obs-studio-stable";
+
+    /**
+     * Adds the Chaotic-AUR key, keyring and repository and syncs the package databases, so that
+     * OBS_PACKAGE can go into the session's PackagePlan. Does nothing when OBS is already installed.
+     */
+    public static void setupRepository() throws IOException, InterruptedException {
         System.out.println("Setting up Chaotic-AUR for Arch Linux...");
 
-        ProcessBuilder checkObs = new ProcessBuilder("pacman", "-Q", "obs-studio-stable");
-        checkObs.redirectOutput(ProcessBuilder.Redirect.DISCARD);
-        checkObs.redirectError(ProcessBuilder.Redirect.DISCARD);
-        if (checkObs.start().waitFor() == 0) {
+        if (PackageInventory.get().hasPackage("obs-studio-stable")) {
             System.out.println("OBS Studio already installed, skipping...");
             return;
         }
 
-        ProcessBuilder checkKey = new ProcessBuilder("pacman-key", "-l");
-        Process keyProcess = checkKey.start();
-        String keyOutput = new String(keyProcess.getInputStream().readAllBytes());
-        keyProcess.waitFor();
-        
+        String keyOutput = ProcessRunner.of("pacman-key", "-l").capture().quiet().run().getStdout();
+
         if (!keyOutput.contains("3056513887B78AEB")) {
             runCommand("pacman-key --recv-key 3056513887B78AEB --keyserver keyserver.ubuntu.com");
             runCommand("pacman-key --lsign-key 3056513887B78AEB");
@@ -37,9 +37,7 @@ public class ChaoticAURInstaller {
 
         runCommand("pacman -Sy");
 
-        runCommand("pacman -S --noconfirm chaotic-aur/obs-studio-stable");
-
-        System.out.println("OBS Studio installed successfully from Chaotic-AUR!");
+        System.out.println("Chaotic-AUR ready for OBS Studio");
     }
 
 
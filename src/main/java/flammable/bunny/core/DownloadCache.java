@@ -0,0 +1,309 @@
+package flammable.bunny.core;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Local cache for everything Lingle downloads, under ~/.local/share/lingle/cache/downloads.
+ *
+ *   blobs/<sha256>       file contents, stored once no matter how many URLs served them
+ *   meta/<sha256(url)>   url, ETag and the blob it resolved to last time
+ *
+ * Release metadata is revalidated with If-None-Match, so an unchanged release costs a 304 with no
+ * body (which GitHub also does not count against the rate limit). Release artifacts live at
+ * versioned URLs and are never refetched once cached; callers get their own copy of the blob, so
+ * editing an installed file can never change what later installs reuse by hash. Blobs unused for
+ * MAX_AGE_DAYS, and the oldest ones beyond MAX_CACHE_BYTES, are pruned after a download.
+ * Transfers themselves go through DownloadManager, so they resume after a dropped connection.
+ * The GitHub API base can be pointed at a local stand-in server with -Dlingle.github.api=http://...
+ */
+public final class DownloadCache {
+
+    private static final Path CACHE_DIR = Path.of(System.getProperty("user.home"))
+            .resolve(".local/share/lingle/cache/downloads");
+    private static final Path BLOB_DIR = CACHE_DIR.resolve("blobs");
+    private static final Path META_DIR = CACHE_DIR.resolve("meta");
+    private static final long MAX_AGE_DAYS = 60;
+    private static final long MAX_CACHE_BYTES = 1L << 30;
+    private static final AtomicBoolean pruned = new AtomicBoolean();
+
+
+    private DownloadCache() {}
+
+    public static String githubApiBase() {
+        String base = System.getProperty("lingle.github.api", "https://api.github.com");
+        return base.endsWith("/") ? base.substring(0, base.length() - 1) : base;
+    }
+
+    /** The latest release of owner/name, revalidated against the cached copy. */
+    public static JSONObject latestRelease(String repo) throws IOException, InterruptedException {
+        return new JSONObject(fetchText(githubApiBase() + "/repos/" + repo + "/releases/latest"));
+    }
+
+    /** The release of owner/name tagged tag, revalidated against the cached copy. */
+    public static JSONObject releaseByTag(String repo, String tag) throws IOException, InterruptedException {
+        return new JSONObject(fetchText(githubApiBase() + "/repos/" + repo + "/releases/tags/" + tag));
+    }
+
+    /**
+     * GETs a JSON or text resource. With a cached copy the request carries If-None-Match and a 304
+     * returns the cached body; a network failure also falls back to the cached body when there is one.
+     */
+    public static String fetchText(String url) throws IOException, InterruptedException {
+        JSONObject meta = readMeta(url);
+        Path cached = meta != null ? blobFor(meta) : null;
+
+        HttpRequest.Builder req = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(20))
+                .header("Accept", "application/vnd.github+json")
+                .GET();
+        if (cached != null && !meta.optString("etag").isEmpty()) {
+            req.header("If-None-Match", meta.getString("etag"));
+        }
+
+        HttpResponse<byte[]> response;
+        try {
+            response = DownloadManager.CLIENT.send(req.build(), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (IOException e) {
+            if (cached == null) throw e;
+            LingleLogger.logWarn("Using cached copy of " + url + ": " + e.getMessage());
+            return Files.readString(cached, StandardCharsets.UTF_8);
+        }
+
+        if (response.statusCode() == 304 && cached != null) {
+            LingleLogger.logInfo("Not modified: " + url);
+            touch(cached);
+            touch(metaPath(url));
+            return Files.readString(cached, StandardCharsets.UTF_8);
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("HTTP " + response.statusCode() + " for " + url);
+        }
+
+        byte[] body = response.body();
+        String sha = store(body);
+        writeMeta(url, sha, body.length, response.headers().firstValue("ETag").orElse(""));
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Places the artifact at target, downloading it only if no cached blob matches. expectedSha256 may
+     * be null; when given, a blob with that hash is reused even if it came from another URL, and a
+     * download with a different hash is rejected.
+     */
+    public static Path fetchArtifact(String url, String expectedSha256, Path target) throws IOException, InterruptedException {
+        return fetchArtifact(url, expectedSha256, target, null);
+    }
+
+    /** fetchArtifact with byte-level progress; listener may be null. */
+    public static Path fetchArtifact(String url, String expectedSha256, Path target, DownloadManager.Listener listener)
+            throws IOException, InterruptedException {
+        copyOut(fetchBlob(url, expectedSha256, listener), target);
+        return target;
+    }
+
+    /**
+     * The cached blob for an artifact, downloading it first if needed. For callers that only read
+     * the file once, such as extracting an archive, this skips placing a copy anywhere.
+     */
+    public static Path fetchBlob(String url, String expectedSha256, DownloadManager.Listener listener)
+            throws IOException, InterruptedException {
+        Path blob = null;
+        if (expectedSha256 != null) {
+            Path byHash = BLOB_DIR.resolve(expectedSha256.toLowerCase());
+            if (Files.isRegularFile(byHash)) blob = byHash;
+        }
+        if (blob == null) {
+            JSONObject meta = readMeta(url);
+            if (meta != null) {
+                Path byUrl = blobFor(meta);
+                if (byUrl != null && (expectedSha256 == null || expectedSha256.equalsIgnoreCase(meta.getString("sha256")))) {
+                    blob = byUrl;
+                }
+            }
+        }
+
+        if (blob != null) {
+            LingleLogger.logInfo("Reusing cached " + url.substring(url.lastIndexOf('/') + 1));
+            touch(blob);
+            return blob;
+        }
+        return download(url, expectedSha256, listener);
+    }
+
+    /** Hex SHA-256 of a file already on disk. */
+    public static String sha256(Path file) throws IOException {
+        MessageDigest md = newDigest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), md)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    // The staging name is derived from the URL so DownloadManager can resume it on the next run
+    private static Path download(String url, String expectedSha256, DownloadManager.Listener listener)
+            throws IOException, InterruptedException {
+        Files.createDirectories(BLOB_DIR);
+        Path staging = BLOB_DIR.resolve("dl-" + hex(url));
+        try {
+            String sha = DownloadManager.download(url, staging, expectedSha256, listener);
+            long size = Files.size(staging);
+            Path blob = BLOB_DIR.resolve(sha);
+            if (!Files.exists(blob)) {
+                Files.move(staging, blob, StandardCopyOption.ATOMIC_MOVE);
+            }
+            writeMeta(url, sha, size, "");
+            LingleLogger.logInfo("Downloaded " + url + " (" + size / 1024 + " KiB)");
+            if (pruned.compareAndSet(false, true)) prune(System.currentTimeMillis(), blob);
+            return blob;
+        } finally {
+            Files.deleteIfExists(staging);
+        }
+    }
+
+    // A copy rather than a hardlink: an in-place write to the target must not alter blobs/<sha256>
+    private static void copyOut(Path blob, Path target) throws IOException {
+        Path parent = target.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, "." + target.getFileName(), ".part");
+        try {
+            Files.copy(blob, tmp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // The modification time doubles as last use, which is what prune() goes by
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * Drops blobs and metadata unused for MAX_AGE_DAYS, then the least recently used blobs until the
+     * rest fit in MAX_CACHE_BYTES. keep is never removed. Runs once per process, after a download.
+     */
+    static void prune(long now, Path keep) {
+        long cutoff = now - TimeUnit.DAYS.toMillis(MAX_AGE_DAYS);
+        try {
+            List<Path> blobs = new ArrayList<>();
+            if (Files.isDirectory(BLOB_DIR)) {
+                try (Stream<Path> list = Files.list(BLOB_DIR)) {
+                    list.filter(Files::isRegularFile).forEach(blobs::add);
+                }
+            }
+            blobs.sort(Comparator.comparingLong(DownloadCache::lastModified).reversed());
+            long total = 0;
+            for (Path blob : blobs) {
+                if (blob.equals(keep)) continue;
+                long size = Files.size(blob);
+                if (lastModified(blob) < cutoff || total + size > MAX_CACHE_BYTES) {
+                    Files.deleteIfExists(blob);
+                } else {
+                    total += size;
+                }
+            }
+            if (Files.isDirectory(META_DIR)) {
+                try (Stream<Path> list = Files.list(META_DIR)) {
+                    for (Path meta : list.toList()) {
+                        if (lastModified(meta) < cutoff) Files.deleteIfExists(meta);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LingleLogger.logWarn("Could not prune the download cache: " + e.getMessage());
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static String store(byte[] body) throws IOException {
+        String sha = HexFormat.of().formatHex(newDigest().digest(body));
+        Path blob = BLOB_DIR.resolve(sha);
+        if (!Files.exists(blob)) {
+            Files.createDirectories(BLOB_DIR);
+            Path tmp = Files.createTempFile(BLOB_DIR, "txt-", ".part");
+            Files.write(tmp, body);
+            Files.move(tmp, blob, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return sha;
+    }
+
+    private static Path blobFor(JSONObject meta) {
+        Path blob = BLOB_DIR.resolve(meta.optString("sha256", "missing"));
+        try {
+            if (Files.isRegularFile(blob) && Files.size(blob) == meta.optLong("size", -1)) return blob;
+        } catch (IOException ignored) {}
+        return null;
+    }
+
+    private static Path metaPath(String url) {
+        return META_DIR.resolve(hex(url) + ".json");
+    }
+
+    private static String hex(String s) {
+        return HexFormat.of().formatHex(newDigest().digest(s.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static JSONObject readMeta(String url) {
+        Path p = metaPath(url);
+        try {
+            if (!Files.exists(p)) return null;
+            JSONObject meta = new JSONObject(Files.readString(p, StandardCharsets.UTF_8));
+            return url.equals(meta.optString("url")) ? meta : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // Several installer tasks download at once, so metadata is replaced atomically
+    private static void writeMeta(String url, String sha, long size, String etag) throws IOException {
+        Files.createDirectories(META_DIR);
+        JSONObject meta = new JSONObject();
+        meta.put("url", url);
+        meta.put("sha256", sha);
+        meta.put("size", size);
+        meta.put("etag", etag);
+        meta.put("fetched", System.currentTimeMillis());
+        Path tmp = Files.createTempFile(META_DIR, "meta-", ".part");
+        Files.writeString(tmp, meta.toString(2), StandardCharsets.UTF_8);
+        Files.move(tmp, metaPath(url), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** The one SHA-256 factory for downloads, the cache and submission packages. */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
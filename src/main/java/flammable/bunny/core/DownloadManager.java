@@ -0,0 +1,448 @@
+package flammable.bunny.core;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Shared HTTP downloader. Every transfer goes to <target>.part next to a small <target>.part.json
+ * that remembers the server's validator, so an interrupted download continues with Range/If-Range
+ * instead of starting over. Large files on servers that accept ranges are fetched in a few
+ * parallel segments. All connections, across all downloads, share one limit and one HttpClient,
+ * which DownloadCache uses for its metadata requests as well.
+ * Single-stream transfers are hashed as the bytes arrive. Segments arrive out of order and SHA-256
+ * cannot absorb them that way, so a segmented file (8 MiB and up) is hashed in one sequential read
+ * once complete; it was just written, so that read is normally served from the page cache.
+ */
+public final class DownloadManager {
+
+    public interface Listener {
+        /** Bytes on disk so far and the total size, or -1 when the server did not say. */
+        void onProgress(long done, long total);
+    }
+
+    private static final int MAX_CONNECTIONS = 6;
+    private static final int SEGMENTS = 4;
+    private static final long SEGMENT_THRESHOLD = 8L * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Semaphore CONNECTIONS = new Semaphore(MAX_CONNECTIONS, true);
+    static final HttpClient CLIENT = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.ALWAYS)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private static final long STALL_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("lingle.download.stallSeconds", 30));
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "lingle-download-watchdog");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final ExecutorService SEGMENT_POOL = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "lingle-download");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private DownloadManager() {}
+
+    /**
+     * Downloads url to target and returns the hex SHA-256 of the result. If expectedSha256 is given
+     * and does not match, the partial file is discarded and an IOException is thrown.
+     */
+    public static String download(String url, Path target, String expectedSha256, Listener listener)
+            throws IOException, InterruptedException {
+        Path part = target.resolveSibling(target.getFileName() + ".part");
+        Path state = target.resolveSibling(target.getFileName() + ".part.json");
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        Listener progress = listener != null ? listener : (d, t) -> {};
+
+        JSONObject saved = readState(state, url);
+        String sha;
+        if (saved != null && saved.has("segments") && Files.exists(part)) {
+            sha = fetchSegmented(url, part, state, saved, progress);
+        } else {
+            Probe probe = saved == null || !Files.exists(part) ? probe(url) : null;
+            if (probe != null && probe.acceptsRanges && probe.length >= SEGMENT_THRESHOLD) {
+                Files.deleteIfExists(part);
+                JSONObject fresh = segmentedState(url, probe.validator, probe.length);
+                sha = fetchSegmented(url, part, state, fresh, progress);
+            } else {
+                sha = fetchSingle(url, part, state, saved, progress);
+            }
+        }
+
+        if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(sha)) {
+            Files.deleteIfExists(part);
+            Files.deleteIfExists(state);
+            throw new IOException("Checksum mismatch for " + url + ": expected " + expectedSha256 + ", got " + sha);
+        }
+
+        Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(state);
+        return sha;
+    }
+
+    // One stream; a leftover .part is continued with Range/If-Range and hashed from its first byte
+    private static String fetchSingle(String url, Path part, Path state, JSONObject saved, Listener progress)
+            throws IOException, InterruptedException {
+        long have = saved != null && Files.exists(part) ? Files.size(part) : 0;
+        MessageDigest md = DownloadCache.newDigest();
+
+        CONNECTIONS.acquire();
+        try {
+            HttpRequest.Builder req = HttpRequest.newBuilder(URI.create(url)).GET();
+            if (have > 0) {
+                req.header("Range", "bytes=" + have + "-");
+                if (!saved.optString("validator").isEmpty()) req.header("If-Range", saved.getString("validator"));
+            }
+            HttpResponse<InputStream> response = CLIENT.send(req.build(), HttpResponse.BodyHandlers.ofInputStream());
+            int status = response.statusCode();
+
+            if (status == 416 && have > 0) {
+                // The part already holds the whole file
+                response.body().close();
+                hashPrefix(part, have, md);
+                progress.onProgress(have, have);
+                return HexFormat.of().formatHex(md.digest());
+            }
+            if (status != 200 && status != 206) {
+                response.body().close();
+                throw new IOException("Failed to download " + url + ": HTTP " + status);
+            }
+
+            boolean resumed = status == 206 && have > 0;
+            if (resumed) {
+                LingleLogger.logInfo("Resuming " + url + " at " + have / 1024 + " KiB");
+                hashPrefix(part, have, md);
+            } else {
+                have = 0;
+            }
+            long total = status == 206 ? totalFromContentRange(response.headers(), -1)
+                    : response.headers().firstValueAsLong("Content-Length").orElse(-1);
+            writeState(state, newState(url, validator(response.headers()), total));
+
+            AtomicLong done = new AtomicLong(have);
+            try (FileChannel ch = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    resumed ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+                copy(response.body(), ch, md, done, total, progress);
+            }
+            return HexFormat.of().formatHex(md.digest());
+        } finally {
+            CONNECTIONS.release();
+        }
+    }
+
+    // Fixed byte ranges written at their offsets; progress per segment is saved so a restart skips finished bytes
+    private static String fetchSegmented(String url, Path part, Path state, JSONObject st, Listener progress)
+            throws IOException, InterruptedException {
+        long length = st.getLong("size");
+        String validator = st.optString("validator");
+        JSONArray saved = st.getJSONArray("segments");
+        int count = saved.length();
+        long[] starts = new long[count];
+        long[] ends = new long[count];
+        AtomicLongArray got = new AtomicLongArray(count);
+        AtomicLong done = new AtomicLong();
+        for (int i = 0; i < count; i++) {
+            JSONArray seg = saved.getJSONArray(i);
+            starts[i] = seg.getLong(0);
+            ends[i] = seg.getLong(1);
+            got.set(i, seg.getLong(2));
+            done.addAndGet(seg.getLong(2));
+        }
+        Runnable save = () -> saveQuietly(state, segmentState(url, validator, length, starts, ends, got));
+        save.run();
+
+        List<Future<Void>> futures = new ArrayList<>();
+        try (FileChannel ch = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            for (int i = 0; i < count; i++) {
+                int idx = i;
+                futures.add(SEGMENT_POOL.submit(() -> {
+                    fetchSegment(url, validator, ch, starts[idx], ends[idx], got, idx, done, length, progress);
+                    return null;
+                }));
+            }
+            Throwable failure = null;
+            try {
+                for (Future<Void> f : futures) {
+                    while (true) {
+                        try {
+                            f.get(1, TimeUnit.SECONDS);
+                            break;
+                        } catch (TimeoutException e) {
+                            // Checkpoint so even a killed process resumes close to where it stopped
+                            save.run();
+                        } catch (ExecutionException e) {
+                            if (failure == null) failure = e.getCause();
+                            break;
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                futures.forEach(x -> x.cancel(true));
+                throw e;
+            } finally {
+                save.run();
+            }
+            if (failure instanceof ChangedException) {
+                // The file changed on the server since the first segment started; begin again
+                Files.deleteIfExists(part);
+                Files.deleteIfExists(state);
+                return fetchSingle(url, part, state, null, progress);
+            }
+            if (failure instanceof IOException io) throw io;
+            if (failure instanceof InterruptedException ie) throw ie;
+            if (failure != null) throw new IOException("Download failed: " + url, failure);
+        }
+
+        // Segments arrive out of order, so the digest is taken once the file is complete (see class doc)
+        MessageDigest md = DownloadCache.newDigest();
+        hashPrefix(part, length, md);
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    private static void fetchSegment(String url, String validator, FileChannel ch, long start, long end,
+                                     AtomicLongArray got, int idx, AtomicLong done, long total, Listener progress)
+            throws IOException, InterruptedException {
+        long pos = start + got.get(idx);
+        if (pos > end) return;
+
+        CONNECTIONS.acquire();
+        try {
+            HttpRequest.Builder req = HttpRequest.newBuilder(URI.create(url)).GET()
+                    .header("Range", "bytes=" + pos + "-" + end);
+            if (!validator.isEmpty()) req.header("If-Range", validator);
+            HttpResponse<InputStream> response = CLIENT.send(req.build(), HttpResponse.BodyHandlers.ofInputStream());
+            if (response.statusCode() == 200) {
+                response.body().close();
+                throw new ChangedException();
+            }
+            if (response.statusCode() != 206) {
+                response.body().close();
+                throw new IOException("Failed to download " + url + ": HTTP " + response.statusCode());
+            }
+
+            byte[] buf = new byte[BUFFER_SIZE];
+            try (InputStream in = response.body(); StallGuard guard = new StallGuard(in)) {
+                int n;
+                while (pos <= end && (n = guard.read(buf, (int) Math.min(buf.length, end - pos + 1))) > 0) {
+                    if (Thread.interrupted()) throw new InterruptedException();
+                    ByteBuffer bb = ByteBuffer.wrap(buf, 0, n);
+                    while (bb.hasRemaining()) pos += ch.write(bb, pos);
+                    got.set(idx, pos - start);
+                    progress.onProgress(done.addAndGet(n), total);
+                }
+            }
+            if (pos <= end) throw new IOException("Connection closed early while downloading " + url);
+        } finally {
+            CONNECTIONS.release();
+        }
+    }
+
+    private static void copy(InputStream body, FileChannel ch, MessageDigest md, AtomicLong done,
+                             long total, Listener progress) throws IOException, InterruptedException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        try (InputStream in = body; StallGuard guard = new StallGuard(in)) {
+            int n;
+            while ((n = guard.read(buf, buf.length)) > 0) {
+                if (Thread.interrupted()) throw new InterruptedException();
+                md.update(buf, 0, n);
+                ByteBuffer bb = ByteBuffer.wrap(buf, 0, n);
+                while (bb.hasRemaining()) ch.write(bb);
+                progress.onProgress(done.addAndGet(n), total);
+            }
+        }
+        if (total > 0 && done.get() < total) {
+            throw new IOException("Connection closed early after " + done.get() + " of " + total + " bytes");
+        }
+    }
+
+    /**
+     * HttpClient has no read timeout once the body is streaming, so a connection that goes quiet
+     * would block forever. The watchdog closes such a stream, which makes the pending read fail and
+     * leaves the .part file to be resumed. Closing rather than interrupting keeps the shared
+     * FileChannel of a segmented download open.
+     */
+    private static final class StallGuard implements AutoCloseable {
+        private final InputStream in;
+        private final ScheduledFuture<?> check;
+        private volatile long lastRead = System.nanoTime();
+        private volatile boolean stalled;
+
+        StallGuard(InputStream in) {
+            this.in = in;
+            this.check = WATCHDOG.scheduleAtFixedRate(this::check, 1, 1, TimeUnit.SECONDS);
+        }
+
+        int read(byte[] buf, int len) throws IOException, InterruptedException {
+            try {
+                int n = in.read(buf, 0, len);
+                lastRead = System.nanoTime();
+                return n;
+            } catch (InterruptedIOException e) {
+                throw new InterruptedException(e.getMessage());
+            } catch (IOException e) {
+                if (stalled) throw new IOException("Download stalled: no data for " + TimeUnit.NANOSECONDS.toSeconds(STALL_NANOS) + "s", e);
+                throw e;
+            }
+        }
+
+        private void check() {
+            if (System.nanoTime() - lastRead < STALL_NANOS) return;
+            stalled = true;
+            check.cancel(false);
+            try {
+                in.close();
+            } catch (IOException ignored) {}
+        }
+
+        @Override
+        public void close() {
+            check.cancel(false);
+        }
+    }
+
+    private static final class Probe {
+        long length = -1;
+        boolean acceptsRanges;
+        String validator = "";
+    }
+
+    private static Probe probe(String url) throws IOException, InterruptedException {
+        Probe p = new Probe();
+        try {
+            HttpRequest req = HttpRequest.newBuilder(URI.create(url))
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                    .timeout(Duration.ofSeconds(15))
+                    .build();
+            HttpResponse<Void> response = CLIENT.send(req, HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() == 200) {
+                HttpHeaders h = response.headers();
+                p.length = h.firstValueAsLong("Content-Length").orElse(-1);
+                p.acceptsRanges = h.firstValue("Accept-Ranges").map(v -> v.contains("bytes")).orElse(false);
+                p.validator = validator(h);
+            }
+        } catch (IOException e) {
+            // Some servers refuse HEAD; a plain GET still works
+        }
+        return p;
+    }
+
+    private static String validator(HttpHeaders h) {
+        String etag = h.firstValue("ETag").orElse("");
+        // Weak ETags are not allowed in If-Range
+        if (!etag.isEmpty() && !etag.startsWith("W/")) return etag;
+        return h.firstValue("Last-Modified").orElse("");
+    }
+
+    private static long totalFromContentRange(HttpHeaders h, long fallback) {
+        String cr = h.firstValue("Content-Range").orElse("");
+        int slash = cr.lastIndexOf('/');
+        if (slash < 0) return fallback;
+        try {
+            return Long.parseLong(cr.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static JSONObject newState(String url, String validator, long size) {
+        JSONObject st = new JSONObject();
+        st.put("url", url);
+        st.put("validator", validator);
+        st.put("size", size);
+        return st;
+    }
+
+    private static JSONObject segmentedState(String url, String validator, long size) {
+        int count = SEGMENTS;
+        long per = (size + count - 1) / count;
+        long[] starts = new long[count];
+        long[] ends = new long[count];
+        for (int i = 0; i < count; i++) {
+            starts[i] = Math.min(size, i * per);
+            ends[i] = Math.min(size, (i + 1) * per) - 1;
+        }
+        return segmentState(url, validator, size, starts, ends, new AtomicLongArray(count));
+    }
+
+    private static JSONObject segmentState(String url, String validator, long size, long[] starts, long[] ends, AtomicLongArray got) {
+        JSONObject st = new JSONObject();
+        st.put("url", url);
+        st.put("validator", validator);
+        st.put("size", size);
+        JSONArray segments = new JSONArray();
+        for (int i = 0; i < starts.length; i++) {
+            JSONArray seg = new JSONArray();
+            seg.put(starts[i]);
+            seg.put(ends[i]);
+            seg.put(got.get(i));
+            segments.put(seg);
+        }
+        st.put("segments", segments);
+        return st;
+    }
+
+    private static JSONObject readState(Path state, String url) {
+        try {
+            if (!Files.exists(state)) return null;
+            JSONObject st = new JSONObject(Files.readString(state, StandardCharsets.UTF_8));
+            return url.equals(st.optString("url")) ? st : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static synchronized void writeState(Path state, JSONObject st) throws IOException {
+        String text = st.toString();
+        Path tmp = state.resolveSibling(state.getFileName() + ".tmp");
+        Files.writeString(tmp, text, StandardCharsets.UTF_8);
+        Files.move(tmp, state, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void saveQuietly(Path state, JSONObject st) {
+        try {
+            writeState(state, st);
+        } catch (IOException ignored) {}
+    }
+
+    private static void hashPrefix(Path file, long length, MessageDigest md) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long left = length;
+            while (left > 0) {
+                buf.clear().limit((int) Math.min(buf.capacity(), left));
+                int n = ch.read(buf);
+                if (n < 0) break;
+                md.update(buf.array(), 0, n);
+                left -= n;
+            }
+        }
+    }
+
+    private static final class ChangedException extends IOException {
+        ChangedException() {
+            super("File changed on the server during download");
+        }
+    }
+}
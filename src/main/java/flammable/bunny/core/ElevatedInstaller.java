@@ -2,10 +2,119 @@ package flammable.bunny.core;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ElevatedInstaller {
 
+    /** Receives a command's output as it is produced. Called on the shell reader thread, so keep it short. */
+    public interface OutputListener {
+        void onLine(String line, boolean stderr);
+    }
+
+    public static final class Result {
+        private final int exitCode;
+        private final boolean timedOut;
+        private final long durationMs;
+
+        Result(int exitCode, boolean timedOut, long durationMs) {
+            this.exitCode = exitCode;
+            this.timedOut = timedOut;
+            this.durationMs = durationMs;
+        }
+
+        public int getExitCode() { return exitCode; }
+        public boolean isTimedOut() { return timedOut; }
+        public long getDurationMs() { return durationMs; }
+        public boolean isSuccess() { return exitCode == 0; }
+    }
+
+    private static final class Pending {
+        final long id;
+        final CompletableFuture<Result> future = new CompletableFuture<>();
+        final OutputListener listener;
+        final long timeoutSeconds;
+        final long startNanos = System.nanoTime();
+
+        Pending(long id, OutputListener listener, long timeoutSeconds) {
+            this.id = id;
+            this.listener = listener;
+            this.timeoutSeconds = timeoutSeconds;
+        }
+    }
+
+    // Runs one command in its own session with stdout/stderr tagged by request id, so the reader
+    // thread can route lines without any command holding the shell. A cancel marker file in the
+    // user-owned cancel dir makes the watcher kill the command's whole process group.
+    private static final String RUNNER_FUNCTION = """
+            __lingle_run() {
+              local id="$1" secs="$2" cmd d pid w so se rc
+              cmd="$(printf '%s' "$3" | base64 -d)" || { echo "@$id X 126"; return; }
+              d="$(mktemp -d /tmp/lingle-run.XXXXXX)" || { echo "@$id X 126"; return; }
+              mkfifo "$d/o" "$d/e"
+              sed -u "s/^/@$id O /" < "$d/o" & so=$!
+              sed -u "s/^/@$id E /" < "$d/e" & se=$!
+              if [ "$secs" -gt 0 ]; then
+                setsid timeout -k 5 "$secs" bash -c "$cmd" > "$d/o" 2> "$d/e" < /dev/null & pid=$!
+              else
+                setsid bash -c "$cmd" > "$d/o" 2> "$d/e" < /dev/null & pid=$!
+              fi
+              ( while kill -0 "$pid" 2>/dev/null; do
+                  if [ -e "$__LINGLE_CANCEL/$id" ]; then
+                    kill -TERM -- "-$pid" 2>/dev/null; sleep 5; kill -KILL -- "-$pid" 2>/dev/null; break
+                  fi
+                  sleep 0.2
+                done ) & w=$!
+              wait "$pid"; rc=$?
+              kill "$w" 2>/dev/null; wait "$w" 2>/dev/null
+              wait "$so" "$se"
+              rm -rf "$d"; rm -f "$__LINGLE_CANCEL/$id"
+              echo "@$id X $rc"
+            }
+            """;
+
+    // Root-side channel workers started from the one authenticated shell, which then only dispatches.
+    // Each worker reads its own FIFO (held open read-write so it never sees EOF) and exits once the
+    // main shell is gone, so a killed Lingle never leaves root processes behind.
+    private static final String CHANNEL_SETUP = """
+            __LINGLE_CH_DIR="$(mktemp -d /tmp/lingle-ch.XXXXXX)"
+            for __c in $(seq 0 %d); do
+              mkfifo "$__LINGLE_CH_DIR/$__c"
+              ( exec 3<>"$__LINGLE_CH_DIR/$__c"
+                while :; do
+                  if IFS= read -r -t 1 __l <&3; then eval "$__l"
+                  elif ! kill -0 $$ 2>/dev/null; then break; fi
+                done ) &
+            done
+            trap 'kill $(jobs -p) 2>/dev/null; rm -rf "$__LINGLE_CH_DIR"' EXIT
+            trap 'exit 143' TERM HUP
+            __lingle_on() { local c="$1"; shift; printf '%%s\\n' "$*" > "$__LINGLE_CH_DIR/$c"; }
+            """;
+
+    /**
+     * Number of command channels in the root shell, all sharing the same authentication. Commands on one channel run in order, different
+     * channels run concurrently.
+     */
+    public static final int CHANNELS = 4;
+    private static final ThreadLocal<Integer> threadChannel = ThreadLocal.withInitial(() -> 0);
+
+    private static final String READY_MARKER = "__SHELL_READY__";
+    private static final Path CANCEL_DIR = Path.of(System.getProperty("user.home"), ".local", "share", "lingle", "cancel");
+    private static final AtomicLong nextId = new AtomicLong(1);
+    private static final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    private static Thread readerThread;
+
     private static Process rootShellProcess;
     private static BufferedWriter shellWriter;
     private static BufferedReader shellReader;
@@ -60,15 +169,23 @@ public class ElevatedInstaller {
         }
     }
 
+    private static final java.util.regex.Pattern POLKIT_AGENT =
+            java.util.regex.Pattern.compile("polkit.*agent|lxpolkit|lxqt-policykit|mate-polkit|xfce-polkit");
+
     private static boolean isPolkitAgentAvailable() {
-        try {
-            // Check if any polkit agent process is running
-            Process p = new ProcessBuilder("bash", "-c",
-                "pgrep -f 'polkit.*agent|lxpolkit|lxqt-policykit|mate-polkit|xfce-polkit' > /dev/null 2>&1").start();
-            return p.waitFor() == 0;
-        } catch (Exception e) {
-            return false;
-        }
+        // Walk /proc instead of running pgrep, which also matched its own bash -c wrapper
+        try (var procs = Files.newDirectoryStream(Path.of("/proc"), "[0-9]*")) {
+            for (Path proc : procs) {
+                try {
+                    String cmdline = new String(Files.readAllBytes(proc.resolve("cmdline")), StandardCharsets.UTF_8)
+                            .replace('\0', ' ');
+                    if (POLKIT_AGENT.matcher(cmdline).find()) return true;
+                } catch (IOException ignored) {
+                    // Process exited while we were looking
+                }
+            }
+        } catch (IOException ignored) {}
+        return false;
     }
 
     private static boolean isRunningInTerminal() {
@@ -77,12 +194,12 @@ public class ElevatedInstaller {
     }
 
     private static boolean isSudoAvailable() {
-        try {
-            Process p = new ProcessBuilder("which", "sudo").start();
-            return p.waitFor() == 0;
-        } catch (Exception e) {
-            return false;
+        String path = System.getenv("PATH");
+        if (path == null) return false;
+        for (String dir : path.split(java.io.File.pathSeparator)) {
+            if (!dir.isEmpty() && Files.isExecutable(Path.of(dir, "sudo"))) return true;
         }
+        return false;
     }
 
     private static void ensureRootShell() throws IOException {
@@ -150,67 +267,48 @@ public class ElevatedInstaller {
                 if (xauthority != null) env.put("XAUTHORITY", xauthority);
             }
 
-            rootShellProcess = pb.start();
-            shellWriter = new BufferedWriter(new OutputStreamWriter(rootShellProcess.getOutputStream(), StandardCharsets.UTF_8));
-            shellReader = new BufferedReader(new InputStreamReader(rootShellProcess.getInputStream(), StandardCharsets.UTF_8));
-
-            // Verify the shell is working by sending a test command
+            Process shell = pb.start();
+            rootShellProcess = shell;
+            shellWriter = new BufferedWriter(new OutputStreamWriter(shell.getOutputStream(), StandardCharsets.UTF_8));
+            shellReader = new BufferedReader(new InputStreamReader(shell.getInputStream(), StandardCharsets.UTF_8));
+
+            // bash only reads stdin once authentication succeeded, so queue the setup right away;
+            // the reader thread completes `ready` when the echo comes back, onExit fails it if the shell dies
+            CompletableFuture<Void> ready = new CompletableFuture<>();
+            startReader(shell, shellReader, ready);
+            shell.onExit().thenRun(() -> ready.completeExceptionally(
+                    new IOException("Elevated shell process died - authentication may have failed")));
             try {
-                // For pkexec, give more time for authentication dialog
-                Thread.sleep(useSudo ? 500 : 2000);
-
-                // Check if process is still alive (authentication might have been cancelled)
-                if (!rootShellProcess.isAlive()) {
-                    LingleLogger.logError("Elevated shell process died immediately - authentication may have failed");
-                    authenticationFailed = true;
-                    rootShellProcess = null;
-                    throw new IOException("Failed to start elevated shell - authentication failed or was cancelled");
-                }
-
-                shellWriter.write("echo __SHELL_READY__\n");
+                installRunner();
+                shellWriter.write("echo " + READY_MARKER + "\n");
                 shellWriter.flush();
+            } catch (IOException e) {
+                ready.completeExceptionally(e);
+            }
 
-                // Wait for confirmation with timeout - longer for pkexec to allow password entry
-                long timeoutMs = useSudo ? 5000 : 60000; // 60 seconds for pkexec, 5 for sudo
-                long startTime = System.currentTimeMillis();
-                boolean ready = false;
-                while (System.currentTimeMillis() - startTime < timeoutMs) {
-                    if (!rootShellProcess.isAlive()) {
-                        LingleLogger.logError("Elevated shell process died during initialization");
-                        authenticationFailed = true;
-                        rootShellProcess = null;
-                        throw new IOException("Elevated shell process died - authentication may have failed");
-                    }
-
-                    // Non-blocking check for ready message
-                    if (shellReader.ready()) {
-                        String line = shellReader.readLine();
-                        LingleLogger.logInfo("Shell init output: " + line);
-                        if (line != null && line.contains("__SHELL_READY__")) {
-                            ready = true;
-                            break;
-                        }
-                    }
-                    Thread.sleep(100);
-                }
-
-                if (!ready) {
-                    LingleLogger.logError("Elevated shell did not respond within timeout");
-                    authenticationFailed = true;
-                    rootShellProcess = null;
-                    throw new IOException("Elevated shell did not respond - authentication may have failed");
-                }
-
-                LingleLogger.logSuccess("Elevated shell initialized successfully");
-
-                // For sudo, start a background process to keep the session alive
-                if (useSudo) {
-                    startSudoKeepAlive();
-                }
-
+            // Upper bound only; normally this returns as soon as the user has authenticated
+            long timeoutMs = useSudo ? 5000 : 60000;
+            try {
+                ready.get(timeoutMs, TimeUnit.MILLISECONDS);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
+                discardShell(shell);
                 throw new IOException("Interrupted while initializing elevated shell", e);
+            } catch (ExecutionException | TimeoutException e) {
+                String reason = e instanceof TimeoutException
+                        ? "Elevated shell did not respond - authentication may have failed"
+                        : e.getCause().getMessage();
+                LingleLogger.logError(reason);
+                authenticationFailed = true;
+                discardShell(shell);
+                throw new IOException(reason);
+            }
+
+            LingleLogger.logSuccess("Elevated shell initialized successfully");
+
+            // For sudo, start a background process to keep the session alive
+            if (useSudo) {
+                startSudoKeepAlive();
             }
 
             if (!initialized) {
@@ -234,12 +332,7 @@ public class ElevatedInstaller {
                 }
             } catch (IOException ignored) {
             }
-            try {
-                if (shellReader != null) {
-                    shellReader.close();
-                }
-            } catch (IOException ignored) {
-            }
+            // The reader thread sees EOF once the shell is gone and fails anything still pending
             if (rootShellProcess != null) {
                 rootShellProcess.destroy();
                 rootShellProcess = null;
@@ -250,69 +343,196 @@ public class ElevatedInstaller {
     }
 
 
-    public static int runElevatedBash(String command) throws IOException, InterruptedException {
-        ensureRootShell();
-        String marker = "__CMD_DONE__" + System.nanoTime();
-        String exitMarker = "__EXIT_CODE__" + System.nanoTime();
+    private static void installRunner() throws IOException {
+        Files.createDirectories(CANCEL_DIR);
+        try (var stale = Files.list(CANCEL_DIR)) {
+            for (Path p : (Iterable<Path>) stale::iterator) Files.deleteIfExists(p);
+        }
+        shellWriter.write("__LINGLE_CANCEL=" + shellQuote(CANCEL_DIR.toString()) + "\n");
+        shellWriter.write(RUNNER_FUNCTION);
+        shellWriter.write(CHANNEL_SETUP.formatted(CHANNELS - 1));
+    }
 
-        String wrapped = "{ " + command + "; }; echo " + exitMarker + ":$?; echo " + marker + "\n";
+    /**
+     * Routes elevated commands issued from the current thread to the given channel until changed again,
+     * so installers running side by side do not queue behind each other. Returns the previous channel.
+     */
+    public static int setChannel(int channel) {
+        int previous = threadChannel.get();
+        threadChannel.set(Math.floorMod(channel, CHANNELS));
+        return previous;
+    }
 
-        synchronized (SHELL_LOCK) {
-            shellWriter.write(wrapped);
-            shellWriter.flush();
+    private static void startReader(Process shell, BufferedReader reader, CompletableFuture<Void> ready) {
+        readerThread = new Thread(() -> readLoop(shell, reader, ready), "lingle-elevated-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    // Caller holds SHELL_LOCK
+    private static void discardShell(Process shell) {
+        shell.destroy();
+        if (rootShellProcess == shell) {
+            rootShellProcess = null;
+            shellWriter = null;
+            shellReader = null;
+        }
+    }
 
-            int exitCode = -1;
+    private static String shellQuote(String s) {
+        return "'" + s.replace("'", "'\\''") + "'";
+    }
+
+    // Routes "@<id> O|E <line>" and "@<id> X <rc>" lines to their pending command
+    private static void readLoop(Process shell, BufferedReader reader, CompletableFuture<Void> ready) {
+        String subsystem = LingleLogger.setSubsystem("elevated");
+        try {
             String line;
-            while ((line = shellReader.readLine()) != null) {
-                if (line.startsWith(exitMarker + ":")) {
+            while ((line = reader.readLine()) != null) {
+                if (!ready.isDone()) {
+                    if (line.equals(READY_MARKER)) ready.complete(null);
+                    else LingleLogger.logInfo("Shell init output: " + line);
+                    continue;
+                }
+                int sp = line.indexOf(' ');
+                if (!line.startsWith("@") || sp < 2 || line.length() < sp + 2) {
+                    LingleLogger.logOutput(line);
+                    continue;
+                }
+                Pending p;
+                try {
+                    p = pending.get(Long.parseLong(line.substring(1, sp)));
+                } catch (NumberFormatException e) {
+                    LingleLogger.logOutput(line);
+                    continue;
+                }
+                if (p == null) continue;
+
+                char kind = line.charAt(sp + 1);
+                String rest = line.length() > sp + 3 ? line.substring(sp + 3) : "";
+                if (kind == 'X') {
+                    pending.remove(p.id);
+                    int rc;
                     try {
-                        exitCode = Integer.parseInt(line.substring((exitMarker + ":").length()).trim());
-                    } catch (NumberFormatException ignored) {
-                        exitCode = -1;
+                        rc = Integer.parseInt(rest.trim());
+                    } catch (NumberFormatException e) {
+                        rc = -1;
+                    }
+                    long ms = (System.nanoTime() - p.startNanos) / 1_000_000;
+                    boolean timedOut = p.timeoutSeconds > 0 && (rc == 124 || rc == 137) && ms >= p.timeoutSeconds * 1000;
+                    p.future.complete(new Result(rc, timedOut, ms));
+                } else if (p.listener != null) {
+                    try {
+                        p.listener.onLine(rest, kind == 'E');
+                    } catch (RuntimeException e) {
+                        LingleLogger.logError("Output listener failed", e);
                     }
-                }
-                if (line.equals(marker)) {
-                    break;
                 }
             }
+        } catch (IOException ignored) {
+        } finally {
+            LingleLogger.setSubsystem(subsystem);
+        }
 
-            return exitCode;
+        // The shell is gone; nothing queued on it will ever finish
+        synchronized (SHELL_LOCK) {
+            if (rootShellProcess == shell) {
+                rootShellProcess = null;
+                shellWriter = null;
+                shellReader = null;
+            }
+        }
+        IOException dead = new IOException("Elevated shell exited");
+        for (Pending p : new ArrayList<>(pending.values())) {
+            pending.remove(p.id);
+            p.future.completeExceptionally(dead);
         }
     }
 
-    public static int runElevatedBashWithOutput(String command) throws IOException, InterruptedException {
-        ensureRootShell();
-        String marker = "__CMD_DONE__" + System.nanoTime();
-        String exitMarker = "__EXIT_CODE__" + System.nanoTime();
+    /**
+     * Queues a command in the root shell and returns immediately. Output is streamed to the listener
+     * (may be null). A timeout of 0 means none. Cancelling the future kills the command's process group.
+     */
+    public static CompletableFuture<Result> submit(String command, long timeoutSeconds, OutputListener listener) throws IOException {
+        return submitAll(threadChannel.get(), List.of(command), timeoutSeconds, listener).get(0);
+    }
 
-        // Redirect stderr to stdout within the bash command to capture all output
-        String wrapped = "{ " + command + " 2>&1; }; echo " + exitMarker + ":$?; echo " + marker + "\n";
+    public static CompletableFuture<Result> submit(int channel, String command, long timeoutSeconds,
+                                                   OutputListener listener) throws IOException {
+        return submitAll(channel, List.of(command), timeoutSeconds, listener).get(0);
+    }
 
+    /**
+     * Queues several commands on one channel with a single write to the root shell.
+     * They run in order on that channel but never block callers or other channels.
+     */
+    public static List<CompletableFuture<Result>> submitAll(int channel, List<String> commands, long timeoutSeconds,
+                                                            OutputListener listener) throws IOException {
+        ensureRootShell();
+        int ch = Math.floorMod(channel, CHANNELS);
+        List<Pending> batch = new ArrayList<>(commands.size());
+        StringBuilder sb = new StringBuilder();
+        for (String command : commands) {
+            Pending p = new Pending(nextId.getAndIncrement(), listener, timeoutSeconds);
+            batch.add(p);
+            sb.append("__lingle_on ").append(ch).append(' ');
+            sb.append("__lingle_run ").append(p.id).append(' ').append(Math.max(0, timeoutSeconds)).append(' ')
+                    .append(Base64.getEncoder().encodeToString(command.getBytes(StandardCharsets.UTF_8))).append('\n');
+        }
+
+        // Register before writing so the reader can never see an id it does not know
+        for (Pending p : batch) {
+            pending.put(p.id, p);
+            p.future.whenComplete((r, t) -> {
+                if (t instanceof CancellationException) requestCancel(p.id);
+            });
+        }
         synchronized (SHELL_LOCK) {
-            shellWriter.write(wrapped);
+            if (shellWriter == null) {
+                for (Pending p : batch) pending.remove(p.id);
+                throw new IOException("Elevated shell is not running");
+            }
+            shellWriter.write(sb.toString());
             shellWriter.flush();
+        }
 
-            int exitCode = -1;
-            String line;
-            while ((line = shellReader.readLine()) != null) {
-                if (line.startsWith(exitMarker + ":")) {
-                    try {
-                        exitCode = Integer.parseInt(line.substring((exitMarker + ":").length()).trim());
-                    } catch (NumberFormatException ignored) {
-                        exitCode = -1;
-                    }
-                } else if (line.equals(marker)) {
-                    break;
-                } else {
-                    // Log all output lines to the logger (both stdout and stderr)
-                    LingleLogger.logOutput(line);
-                }
-            }
+        List<CompletableFuture<Result>> futures = new ArrayList<>(batch.size());
+        for (Pending p : batch) futures.add(p.future);
+        return futures;
+    }
 
-            return exitCode;
+    private static void requestCancel(long id) {
+        try {
+            Files.createDirectories(CANCEL_DIR);
+            Files.writeString(CANCEL_DIR.resolve(Long.toString(id)), "");
+        } catch (IOException e) {
+            LingleLogger.logError("Failed to cancel elevated command " + id, e);
+        }
+    }
+
+    // Blocking wrapper for the old call sites; interrupting the caller cancels the command
+    private static int await(CompletableFuture<Result> future) throws IOException, InterruptedException {
+        try {
+            return future.get().getExitCode();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            throw new IOException(cause);
         }
     }
 
+    public static int runElevatedBash(String command) throws IOException, InterruptedException {
+        return await(submit(command, 0, null));
+    }
+
+    public static int runElevatedBashWithOutput(String command) throws IOException, InterruptedException {
+        // Log all output lines to the logger (both stdout and stderr)
+        return await(submit(command, 0, (line, stderr) -> LingleLogger.logOutput(line)));
+    }
+
 
     public static int runElevated(String... command) throws IOException, InterruptedException {
         // If authentication previously failed, don't retry
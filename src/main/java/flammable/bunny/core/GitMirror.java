@@ -0,0 +1,119 @@
+package flammable.bunny.core;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Bare, shallow mirrors of the repositories Lingle clones, under ~/.local/share/lingle/cache/git.
+ * Each checkout first refreshes the mirror with a depth-1 fetch of just the wanted branch, which
+ * only transfers the objects of a new tip, then clones the working tree from the local mirror.
+ * When the network is down an existing mirror is used as it is.
+ */
+public final class GitMirror {
+
+    private static final Path MIRROR_DIR = Path.of(System.getProperty("user.home"))
+            .resolve(".local/share/lingle/cache/git");
+
+    private static final Map<Path, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private GitMirror() {}
+
+    /**
+     * Creates a working tree of url at target, on branch or on the remote's default branch when
+     * branch is null. target must not exist yet. The checkout's origin points at url, not the mirror.
+     */
+    public static void checkout(String url, String branch, Path target) throws IOException, InterruptedException {
+        Path mirror = mirrorFor(url);
+        synchronized (LOCKS.computeIfAbsent(mirror, k -> new Object())) {
+            String resolved = refresh(url, branch, mirror);
+
+            Path parent = target.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            // file:// makes git honour --depth against the shallow mirror instead of copying it whole
+            git(null, "clone", "--quiet", "--depth", "1", "--branch", resolved,
+                    mirror.toUri().toString(), target.toString());
+            git(target, "remote", "set-url", "origin", url);
+        }
+        LingleLogger.logSuccess("Checked out " + url + " into " + target);
+    }
+
+    // Returns the branch the checkout should use; the mirror's HEAD follows the remote's default
+    private static String refresh(String url, String branch, Path mirror) throws IOException, InterruptedException {
+        boolean exists = Files.isDirectory(mirror.resolve("objects"));
+        if (!exists) {
+            Files.createDirectories(mirror);
+            git(null, "init", "--quiet", "--bare", mirror.toString());
+        }
+
+        try {
+            String name = branch != null ? branch : defaultBranch(url);
+            git(mirror, "fetch", "--quiet", "--depth", "1", "--prune", url,
+                    "+refs/heads/" + name + ":refs/heads/" + name);
+            if (branch == null) git(mirror, "symbolic-ref", "HEAD", "refs/heads/" + name);
+            LingleLogger.logInfo("Mirror of " + url + " is up to date");
+            return name;
+        } catch (IOException e) {
+            if (!exists) {
+                // Do not leave an empty mirror behind that a later offline run would mistake for a cache
+                deleteRecursively(mirror);
+                throw e;
+            }
+            LingleLogger.logWarn("Could not refresh mirror of " + url + ", using the cached copy: " + e.getMessage());
+            if (branch != null) return branch;
+            String head = git(mirror, "symbolic-ref", "--short", "HEAD").trim();
+            if (head.isEmpty()) throw e;
+            return head;
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path p : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    private static String defaultBranch(String url) throws IOException, InterruptedException {
+        // "ref: refs/heads/main	HEAD"
+        for (String line : git(null, "ls-remote", "--symref", url, "HEAD").split("\n")) {
+            if (line.startsWith("ref: refs/heads/")) {
+                // Split on any whitespace rather than the tab, so other spacing cannot throw
+                String branch = line.substring("ref: refs/heads/".length()).trim().split("\\s+")[0];
+                if (!branch.isEmpty()) return branch;
+            }
+        }
+        throw new IOException("Could not determine the default branch of " + url);
+    }
+
+    // One directory per remote, e.g. github.com/ByPaco10/waywall.git
+    private static Path mirrorFor(String url) {
+        URI uri = URI.create(url);
+        String path = uri.getPath().replaceAll("^/+", "").replaceAll("\\.git$", "");
+        String host = uri.getHost() != null ? uri.getHost() : "local";
+        return MIRROR_DIR.resolve(host).resolve(path.replaceAll("[^A-Za-z0-9._/-]", "_") + ".git");
+    }
+
+    private static String git(Path workDir, String... args) throws IOException, InterruptedException {
+        List<String> cmd = new ArrayList<>();
+        cmd.add("git");
+        cmd.addAll(List.of(args));
+        ProcessRunner.Result result = ProcessRunner.of(cmd)
+                .directory(workDir)
+                .env("GIT_TERMINAL_PROMPT", "0")
+                .capture()
+                .run();
+        if (!result.isSuccess()) {
+            throw new IOException("git " + args[0] + " exited with code " + result.getExitCode());
+        }
+        return result.getStdout();
+    }
+}
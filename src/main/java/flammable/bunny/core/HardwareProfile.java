@@ -0,0 +1,254 @@
+package flammable.bunny.core;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Distro, package manager, GPU, CPU, RAM and kernel of this machine, read straight from
+ * /etc/os-release, /sys and /proc without spawning processes. The result is kept in memory
+ * and in ~/.local/share/lingle/hardware.json, keyed by a fingerprint of the kernel release
+ * and the PCI device list so a kernel update or a GPU swap triggers a fresh detection.
+ */
+public final class HardwareProfile {
+
+    private static final Path CACHE_PATH = Path.of(System.getProperty("user.home"))
+            .resolve(".local/share/lingle/hardware.json");
+    private static final Path OS_RELEASE = Path.of("/etc/os-release");
+    private static final Path PCI_DEVICES = Path.of("/sys/bus/pci/devices");
+    private static final Path MEMINFO = Path.of("/proc/meminfo");
+    private static final Path KERNEL_RELEASE = Path.of("/proc/sys/kernel/osrelease");
+
+    private static volatile HardwareProfile current;
+
+    private final String fingerprint;
+    private final String distro;
+    private final List<String> distroLike;
+    private final String packageManager;
+    private final List<String> gpuVendors;
+    private final int cpuCores;
+    private final long memoryMB;
+    private final String kernel;
+
+    private HardwareProfile(String fingerprint, String distro, List<String> distroLike, String packageManager,
+                            List<String> gpuVendors, int cpuCores, long memoryMB, String kernel) {
+        this.fingerprint = fingerprint;
+        this.distro = distro;
+        this.distroLike = List.copyOf(distroLike);
+        this.packageManager = packageManager;
+        this.gpuVendors = List.copyOf(gpuVendors);
+        this.cpuCores = cpuCores;
+        this.memoryMB = memoryMB;
+        this.kernel = kernel;
+    }
+
+    /** Returns the profile for this machine, detecting it at most once per process. */
+    public static HardwareProfile get() {
+        HardwareProfile p = current;
+        if (p != null) return p;
+        synchronized (HardwareProfile.class) {
+            if (current == null) current = loadOrDetect();
+            return current;
+        }
+    }
+
+    /** Drops the cached profile and detects again, e.g. after the user installed a driver. */
+    public static synchronized HardwareProfile refresh() {
+        current = detect(fingerprint());
+        writeCache(current);
+        return current;
+    }
+
+    public String getDistro() { return distro; }
+    public List<String> getDistroLike() { return distroLike; }
+    public String getPackageManager() { return packageManager; }
+    public List<String> getGpuVendors() { return gpuVendors; }
+    public int getCpuCores() { return cpuCores; }
+    public long getMemoryMB() { return memoryMB; }
+    public String getKernel() { return kernel; }
+
+    /** Primary GPU vendor in the same form the old lspci probe returned: nvidia, amd, intel or unknown. */
+    public String getGpu() {
+        for (String vendor : List.of("nvidia", "amd", "intel")) {
+            if (gpuVendors.contains(vendor)) return vendor;
+        }
+        return "unknown";
+    }
+
+    public boolean hasNvidiaGpu() {
+        return gpuVendors.contains("nvidia");
+    }
+
+    @Override
+    public String toString() {
+        return "distro=" + distro + " pm=" + packageManager + " gpu=" + String.join("+", gpuVendors) +
+                " cores=" + cpuCores + " ram=" + memoryMB + "MB kernel=" + kernel;
+    }
+
+    private static HardwareProfile loadOrDetect() {
+        String fp = fingerprint();
+        HardwareProfile cached = readCache();
+        if (cached != null && cached.fingerprint.equals(fp)) return cached;
+
+        HardwareProfile detected = detect(fp);
+        writeCache(detected);
+        LingleLogger.logInfo("Detected hardware: " + detected);
+        return detected;
+    }
+
+    // SHA-256 of the kernel release plus every PCI slot with its vendor/device ids; cheap sysfs reads only
+    private static String fingerprint() {
+        StringBuilder sb = new StringBuilder(readFirstLine(KERNEL_RELEASE, "unknown"));
+        for (Path dev : listPciDevices()) {
+            sb.append('|').append(dev.getFileName())
+                    .append(':').append(readFirstLine(dev.resolve("vendor"), "?"))
+                    .append(':').append(readFirstLine(dev.resolve("device"), "?"));
+        }
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(sb.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static HardwareProfile detect(String fp) {
+        Map<String, String> os = readOsRelease();
+        String distro = os.getOrDefault("ID", "unknown");
+        List<String> like = new ArrayList<>();
+        String idLike = os.get("ID_LIKE");
+        if (idLike != null) {
+            for (String s : idLike.split(" ")) {
+                if (!s.isBlank()) like.add(s);
+            }
+        }
+
+        String pm = packageManagerFor(distro);
+        for (int i = 0; pm == null && i < like.size(); i++) {
+            pm = packageManagerFor(like.get(i));
+        }
+
+        return new HardwareProfile(fp, distro, like, pm, detectGpuVendors(),
+                Runtime.getRuntime().availableProcessors(), readMemoryMB(),
+                readFirstLine(KERNEL_RELEASE, "unknown"));
+    }
+
+    static String packageManagerFor(String distro) {
+        return switch (distro.toLowerCase(Locale.ROOT)) {
+            case "arch", "endeavouros", "manjaro", "artix", "cachyos", "garuda" -> "pacman";
+            case "debian", "ubuntu", "mint", "linuxmint", "pop", "pop!_os", "kali", "elementary", "zorin" -> "apt";
+            case "fedora", "rhel", "centos", "rocky", "almalinux", "nobara" -> "dnf";
+            case "opensuse", "suse", "opensuse-tumbleweed", "opensuse-leap" -> "zypper";
+            case "alpine" -> "apk";
+            case "void" -> "xbps";
+            case "gentoo" -> "emerge";
+            default -> null;
+        };
+    }
+
+    private static Map<String, String> readOsRelease() {
+        Map<String, String> values = new HashMap<>();
+        try {
+            for (String line : Files.readAllLines(OS_RELEASE, StandardCharsets.UTF_8)) {
+                int eq = line.indexOf('=');
+                if (eq <= 0 || line.startsWith("#")) continue;
+                String value = line.substring(eq + 1).trim();
+                if (value.length() >= 2 && (value.startsWith("\"") || value.startsWith("'"))) {
+                    value = value.substring(1, value.length() - 1);
+                }
+                values.put(line.substring(0, eq).trim(), value);
+            }
+        } catch (IOException ignored) {}
+        return values;
+    }
+
+    // PCI class 0x03xxxx is a display controller (VGA, 3D or other)
+    private static List<String> detectGpuVendors() {
+        Set<String> vendors = new LinkedHashSet<>();
+        for (Path dev : listPciDevices()) {
+            if (!readFirstLine(dev.resolve("class"), "").startsWith("0x03")) continue;
+            switch (readFirstLine(dev.resolve("vendor"), "").toLowerCase(Locale.ROOT)) {
+                case "0x10de" -> vendors.add("nvidia");
+                // 0x1022 is AMD's CPU and chipset vendor id, never a GPU
+                case "0x1002" -> vendors.add("amd");
+                case "0x8086" -> vendors.add("intel");
+                default -> {}
+            }
+        }
+        return new ArrayList<>(vendors);
+    }
+
+    private static long readMemoryMB() {
+        try {
+            for (String line : Files.readAllLines(MEMINFO, StandardCharsets.UTF_8)) {
+                if (!line.startsWith("MemTotal:")) continue;
+                String kb = line.substring("MemTotal:".length()).replace("kB", "").trim();
+                return Long.parseLong(kb) / 1024;
+            }
+        } catch (IOException | NumberFormatException ignored) {}
+        return -1;
+    }
+
+    private static List<Path> listPciDevices() {
+        if (!Files.isDirectory(PCI_DEVICES)) return List.of();
+        try (Stream<Path> s = Files.list(PCI_DEVICES)) {
+            return s.sorted().toList();
+        } catch (IOException e) {
+            return List.of();
+        }
+    }
+
+    private static String readFirstLine(Path file, String fallback) {
+        try {
+            String s = Files.readString(file, StandardCharsets.UTF_8).trim();
+            int nl = s.indexOf('\n');
+            return nl < 0 ? s : s.substring(0, nl).trim();
+        } catch (IOException e) {
+            return fallback;
+        }
+    }
+
+    private static HardwareProfile readCache() {
+        try {
+            if (!Files.exists(CACHE_PATH)) return null;
+            JSONObject o = new JSONObject(Files.readString(CACHE_PATH, StandardCharsets.UTF_8));
+            List<String> like = new ArrayList<>();
+            JSONArray likeArr = o.optJSONArray("distroLike");
+            if (likeArr != null) for (int i = 0; i < likeArr.length(); i++) like.add(likeArr.getString(i));
+            List<String> gpus = new ArrayList<>();
+            JSONArray gpuArr = o.optJSONArray("gpuVendors");
+            if (gpuArr != null) for (int i = 0; i < gpuArr.length(); i++) gpus.add(gpuArr.getString(i));
+            String pm = o.optString("packageManager", "");
+            return new HardwareProfile(o.getString("fingerprint"), o.optString("distro", "unknown"), like,
+                    pm.isEmpty() ? null : pm, gpus, o.optInt("cpuCores", Runtime.getRuntime().availableProcessors()),
+                    o.optLong("memoryMB", -1), o.optString("kernel", "unknown"));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static void writeCache(HardwareProfile p) {
+        try {
+            Files.createDirectories(CACHE_PATH.getParent());
+            JSONObject o = new JSONObject();
+            o.put("fingerprint", p.fingerprint);
+            o.put("distro", p.distro);
+            o.put("distroLike", new JSONArray(p.distroLike));
+            o.put("packageManager", p.packageManager == null ? "" : p.packageManager);
+            o.put("gpuVendors", new JSONArray(p.gpuVendors));
+            o.put("cpuCores", p.cpuCores);
+            o.put("memoryMB", p.memoryMB);
+            o.put("kernel", p.kernel);
+            Files.writeString(CACHE_PATH, o.toString(2), StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            LingleLogger.logError("Failed to write hardware cache", e);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package flammable.bunny.core;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.FileLockInterruptionException;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/**
+ * Single-instance lock. The process holding ~/.local/share/lingle/lingle.lock owns the
+ * control socket and the ADW deletion loop; every other launch hands its work to it and waits
+ * as a standby. The OS drops the lock when the owner exits or dies, at which point a standby
+ * takes it over, so closing the GUI never leaves ADW without a process running it.
+ */
+public final class InstanceLock {
+
+    private static FileChannel channel;
+    private static FileLock lock;
+
+    private InstanceLock() {}
+
+    private static Path lingleDir() {
+        return Path.of(System.getProperty("user.home"), ".local", "share", "lingle");
+    }
+
+    public static Path getLockPath() {
+        return lingleDir().resolve("lingle.lock");
+    }
+
+    public static Path getPidPath() {
+        return lingleDir().resolve("lingle.pid");
+    }
+
+    /** Tries to become the owner. Returns true if this process holds the lock afterwards. */
+    public static synchronized boolean acquire() {
+        if (lock != null && lock.isValid()) return true;
+        try {
+            Files.createDirectories(lingleDir());
+            channel = FileChannel.open(getLockPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        } catch (IOException e) {
+            LingleLogger.logError("Failed to open instance lock", e);
+            lock = null;
+        }
+
+        if (lock == null) {
+            closeQuietly();
+            return false;
+        }
+
+        announce();
+        return true;
+    }
+
+    /**
+     * Blocks until this process owns the lock, i.e. until the current owner exits. Returns false if
+     * waiting failed or the thread was interrupted.
+     */
+    public static boolean awaitOwnership() {
+        if (isOwner()) return true;
+        FileChannel ch = null;
+        try {
+            Files.createDirectories(lingleDir());
+            ch = FileChannel.open(getLockPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            // Blocks outside the monitor so isOwner() stays answerable while we wait
+            FileLock acquired = ch.lock();
+            synchronized (InstanceLock.class) {
+                channel = ch;
+                lock = acquired;
+            }
+        } catch (IOException | OverlappingFileLockException e) {
+            if (!(e instanceof FileLockInterruptionException)) {
+                LingleLogger.logError("Failed to wait for the instance lock", e);
+            }
+            try {
+                if (ch != null) ch.close();
+            } catch (IOException ignored) {}
+            return false;
+        }
+        announce();
+        return true;
+    }
+
+    /** Waits on a background thread for the owner to exit, then takes the lock and runs onAcquired. */
+    public static void takeOverWhenReleased(Runnable onAcquired) {
+        Thread t = new Thread(() -> {
+            if (awaitOwnership()) {
+                LingleLogger.logInfo("Previous Lingle process exited; taking over ADW and the control socket");
+                onAcquired.run();
+            }
+        }, "lingle-lock-standby");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public static synchronized boolean isOwner() {
+        return lock != null && lock.isValid();
+    }
+
+    /** Pid of the current owner according to the pid file, or -1 if unknown or no longer alive. */
+    public static long getOwnerPid() {
+        try {
+            long pid = Long.parseLong(Files.readString(getPidPath()).trim());
+            return ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false) ? pid : -1;
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Gives up ownership. The control socket is closed and unlinked first, all in this one shutdown
+     * hook, so a standby that takes the lock never has its freshly bound socket deleted by us.
+     */
+    public static void release() {
+        // Outside our monitor: LingleControlServer.start() calls isOwner() while holding its own
+        LingleControlServer.stop();
+        synchronized (InstanceLock.class) {
+            if (lock == null) return;
+            try {
+                Files.deleteIfExists(getPidPath());
+            } catch (IOException ignored) {}
+            closeQuietly();
+        }
+    }
+
+    private static void announce() {
+        try {
+            Files.writeString(getPidPath(), ProcessHandle.current().pid() + "\n", StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            LingleLogger.logError("Failed to write pid file", e);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(InstanceLock::release));
+        LingleLogger.logInfo("Acquired instance lock (pid " + ProcessHandle.current().pid() + ")");
+    }
+
+    private static void closeQuietly() {
+        try {
+            if (lock != null) lock.release();
+        } catch (IOException ignored) {}
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException ignored) {}
+        lock = null;
+        channel = null;
+    }
+}
@@ -1,28 +1,20 @@
 package flammable.bunny.core;
 
 import java.io.IOException;
-import java.util.List;
 
 public final class JemallocInstaller {
 
     private JemallocInstaller() {}
 
-    public static void installJemalloc() throws IOException, InterruptedException {
-        String pkgManager = DistroDetector.getPackageManager();
+    /** Distro package providing libjemalloc, added to the session's PackagePlan. */
+    public static String packagesFor(String pkgManager) throws IOException {
         if (pkgManager == null) throw new IOException("Could not detect package manager");
 
-        String cmd = switch (pkgManager) {
-            case "pacman" -> "pacman -S --noconfirm jemalloc";
-            case "apt" -> "apt update && apt install -y libjemalloc2";
-            case "dnf" -> "dnf install -y jemalloc";
-            case "zypper" -> "zypper install -y jemalloc";
-            case "apk" -> "apk add jemalloc";
-            case "xbps" -> "xbps-install -Sy jemalloc";
-            case "emerge" -> "emerge jemalloc";
+        return switch (pkgManager) {
+            case "pacman", "dnf", "zypper", "apk", "xbps" -> "jemalloc";
+            case "apt" -> "libjemalloc2";
+            case "emerge" -> "dev-libs/jemalloc";
             default -> throw new IOException("Unsupported package manager: " + pkgManager);
         };
-
-        if (ElevatedInstaller.runElevatedBash(cmd) != 0)
-            throw new IOException("Jemalloc installation failed");
     }
 }
@@ -0,0 +1,96 @@
+package flammable.bunny.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Client side of {@link LingleControlServer}. Used by {@code --send} so waywall keybinds
+ * can poke the running Lingle process instead of starting a full instance.
+ */
+public final class LingleControlClient {
+
+    /** Long enough for a STAGE sync or a RELINK; the owner serializes commands, so one may queue behind another. */
+    public static final long DEFAULT_TIMEOUT_MS = 30_000;
+    private static final long PING_TIMEOUT_MS = 2_000;
+
+    // Closes a channel whose reply is overdue, which wakes the thread blocked on it
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "lingle-control-timeout");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private LingleControlClient() {}
+
+    public static String send(String command) throws IOException {
+        return send(command, DEFAULT_TIMEOUT_MS);
+    }
+
+    /** Sends one command and returns the reply line, giving up once timeoutMs has passed. */
+    public static String send(String command, long timeoutMs) throws IOException {
+        Path socketPath = LingleControlServer.getSocketPath();
+        if (!Files.exists(socketPath)) {
+            throw new IOException("Lingle is not running (no socket at " + socketPath + ")");
+        }
+
+        AtomicBoolean timedOut = new AtomicBoolean();
+        try (SocketChannel ch = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            ScheduledFuture<?> deadline = WATCHDOG.schedule(() -> {
+                timedOut.set(true);
+                try {
+                    ch.close();
+                } catch (IOException ignored) {}
+            }, timeoutMs, TimeUnit.MILLISECONDS);
+            try {
+                ch.connect(UnixDomainSocketAddress.of(socketPath));
+                Writer out = Channels.newWriter(ch, StandardCharsets.UTF_8);
+                out.write(command.trim() + "\n");
+                out.flush();
+                BufferedReader in = new BufferedReader(Channels.newReader(ch, StandardCharsets.UTF_8));
+                String reply = in.readLine();
+                if (reply == null) throw new IOException("Lingle closed the connection without replying");
+                return reply;
+            } finally {
+                deadline.cancel(false);
+            }
+        } catch (IOException e) {
+            if (timedOut.get()) throw new IOException("Lingle did not reply to " + command.trim() + " within " + timeoutMs + " ms");
+            throw e;
+        }
+    }
+
+    public static boolean isServerAlive() {
+        try {
+            return send("PING", PING_TIMEOUT_MS).startsWith("OK");
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** Entry point for {@code --send <command...>}; prints the reply and exits. */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            ErrorCodes.exit(ErrorCodes.MISUSE, "Usage: --send <PING|STATUS|BOP|RELINK|RELOAD|ADW ON|OFF|TOGGLE|STOP>");
+        }
+        try {
+            String reply = send(String.join(" ", args));
+            System.out.println(reply);
+            System.exit(reply.startsWith("OK") ? ErrorCodes.SUCCESS : ErrorCodes.GENERAL_ERROR);
+        } catch (IOException e) {
+            ErrorCodes.exit(ErrorCodes.STATE_ERROR, e.getMessage());
+        }
+    }
+}
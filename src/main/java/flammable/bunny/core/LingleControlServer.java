@@ -0,0 +1,231 @@
+package flammable.bunny.core;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Line-based control API on ~/.local/share/lingle/lingle.sock, served by the instance lock owner.
+ * Each request is one line, each response is one line starting with OK or ERR.
+ *
+ *   PING                      health check
+ *   STATUS                    pid, tmpfs, adw and worldbopper state
+ *   BOP                       run WorldBopper once
+ *   RELINK                    rewrite the startup script and relink practice maps
+ *   RELOAD                    re-read config.json and restart ADW
+ *   ADW ON|OFF|TOGGLE|STATUS  control auto delete worlds
+ *   STAGE                     refresh the staged submission worlds and hold them for packaging
+ *   STAGE DONE                release the hold once the package is written
+ *   STOP                      shut the process down
+ */
+public final class LingleControlServer {
+
+    private static final Object COMMAND_LOCK = new Object();
+    // One thread per connection, so a client that keeps its connection open cannot hold up the others
+    private static final AtomicInteger CONNECTION_IDS = new AtomicInteger();
+    private static final ExecutorService CONNECTIONS = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "lingle-control-conn-" + CONNECTION_IDS.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+    private static ServerSocketChannel server;
+    // Inode of the socket we bound, so stop() never unlinks a newer owner's socket
+    private static Object socketKey;
+    private static Thread acceptThread;
+
+    private LingleControlServer() {}
+
+    public static Path getSocketPath() {
+        return Path.of(System.getProperty("user.home"), ".local", "share", "lingle", "lingle.sock");
+    }
+
+    /**
+     * Binds the socket and starts serving on a daemon thread.
+     * Returns false if another live Lingle process is already listening.
+     */
+    public static synchronized boolean start() throws IOException {
+        if (server != null) return true;
+        if (!InstanceLock.isOwner()) return false;
+
+        Path socketPath = getSocketPath();
+        Files.createDirectories(socketPath.getParent());
+
+        if (Files.exists(socketPath)) {
+            if (LingleControlClient.isServerAlive()) {
+                LingleLogger.logInfo("Control socket already served by another Lingle process");
+                return false;
+            }
+            // Left behind by a process that did not shut down cleanly
+            Files.deleteIfExists(socketPath);
+        }
+
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socketPath));
+        try {
+            Files.setPosixFilePermissions(socketPath,
+                    EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE));
+        } catch (UnsupportedOperationException ignored) {}
+        socketKey = fileKey(socketPath);
+
+        acceptThread = new Thread(LingleControlServer::acceptLoop, "lingle-control");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+
+        // No shutdown hook of its own: InstanceLock.release() stops the server before dropping the lock
+        LingleLogger.logInfo("Control socket listening on " + socketPath);
+        return true;
+    }
+
+    /** Closes the socket and unlinks it, unless the path now belongs to another process's socket. */
+    public static synchronized void stop() {
+        if (server == null) return;
+        try {
+            server.close();
+        } catch (IOException ignored) {}
+        server = null;
+        Path socketPath = getSocketPath();
+        Object key = fileKey(socketPath);
+        if (key != null && key.equals(socketKey)) {
+            try {
+                Files.deleteIfExists(socketPath);
+            } catch (IOException ignored) {}
+        }
+        socketKey = null;
+    }
+
+    private static Object fileKey(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void acceptLoop() {
+        LingleLogger.setSubsystem("control");
+        ServerSocketChannel ch = server;
+        while (ch != null && ch.isOpen()) {
+            SocketChannel client;
+            try {
+                client = ch.accept();
+            } catch (IOException e) {
+                if (!ch.isOpen()) return;
+                LingleLogger.logError("Control socket accept failed", e);
+                continue;
+            }
+            CONNECTIONS.execute(() -> {
+                LingleLogger.setSubsystem("control");
+                try (client) {
+                    serve(client);
+                } catch (IOException e) {
+                    LingleLogger.logError("Control socket connection failed", e);
+                }
+            });
+        }
+    }
+
+    private static void serve(SocketChannel client) throws IOException {
+        BufferedReader in = new BufferedReader(Channels.newReader(client, StandardCharsets.UTF_8));
+        Writer out = Channels.newWriter(client, StandardCharsets.UTF_8);
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.isBlank()) continue;
+            String response = handle(line.trim());
+            out.write(response + "\n");
+            out.flush();
+            if (response.equals("OK stopping")) {
+                new Thread(() -> System.exit(0), "lingle-stop").start();
+                return;
+            }
+        }
+    }
+
+    static String handle(String line) {
+        String[] parts = line.split("\\s+");
+        String cmd = parts[0].toUpperCase(Locale.ROOT);
+        String arg = parts.length > 1 ? parts[1].toUpperCase(Locale.ROOT) : "";
+
+        // The final sync can take a while and has a lock of its own; other commands need not wait for it
+        if (cmd.equals("STAGE")) {
+            try {
+                return SubmissionStager.handleCommand(arg);
+            } catch (Exception e) {
+                LingleLogger.logError("Control command failed: " + line, e);
+                return "ERR " + e.getClass().getSimpleName() + ": " + e.getMessage();
+            }
+        }
+
+        synchronized (COMMAND_LOCK) {
+            try {
+                return switch (cmd) {
+                    case "PING" -> "OK pong";
+                    case "STATUS" -> "OK " + status();
+                    case "BOP" -> {
+                        WorldBopperManager.runOnce();
+                        yield "OK bopped";
+                    }
+                    case "RELINK" -> {
+                        LinkInstancesService.preparePracticeMapLinks();
+                        LinkInstancesService.linkPracticeMapsNow();
+                        yield "OK relinked";
+                    }
+                    case "RELOAD" -> {
+                        LingleState.loadState();
+                        AdwManager.startAdwIfNeeded();
+                        yield "OK reloaded";
+                    }
+                    case "ADW" -> adw(arg);
+                    case "STOP" -> "OK stopping";
+                    default -> "ERR unknown command: " + cmd;
+                };
+            } catch (Exception e) {
+                LingleLogger.logError("Control command failed: " + line, e);
+                return "ERR " + e.getClass().getSimpleName() + ": " + e.getMessage();
+            }
+        }
+    }
+
+    private static String adw(String arg) throws IOException {
+        boolean target;
+        switch (arg) {
+            case "ON" -> target = true;
+            case "OFF" -> target = false;
+            case "TOGGLE" -> target = !LingleState.adwEnabled;
+            case "", "STATUS" -> {
+                return "OK adw=" + (LingleState.adwEnabled ? "on" : "off") + " running=" + AdwManager.isRunning();
+            }
+            default -> {
+                return "ERR usage: ADW ON|OFF|TOGGLE|STATUS";
+            }
+        }
+
+        LingleState.adwEnabled = target;
+        LingleState.saveState();
+        WaywallConfig.setToggle("toggle_lingle", target);
+        AdwManager.startAdwIfNeeded();
+        LingleLogger.logInfo("ADW " + (target ? "enabled" : "disabled") + " via control socket");
+        return "OK adw=" + (target ? "on" : "off");
+    }
+
+    private static String status() {
+        return "pid=" + ProcessHandle.current().pid() +
+                " tmpfs=" + (LingleState.enabled ? "on" : "off") +
+                " adw=" + (LingleState.adwEnabled ? "on" : "off") +
+                " adwRunning=" + AdwManager.isRunning() +
+                " staging=" + SubmissionStager.isRunning() +
+                " worldbopper=" + (LingleState.worldBopperEnabled ? "on" : "off") +
+                " instances=" + LingleState.instanceCount;
+    }
+}
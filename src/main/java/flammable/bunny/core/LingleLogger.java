@@ -1,121 +1,286 @@
 package flammable.bunny.core;
 
-import javax.swing.*;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
 
 public class LingleLogger {
-    private static final List<String> logEntries = new ArrayList<>();
-    private static final List<JTextArea> listeners = new ArrayList<>();
-    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
-    public static void log(String message) {
-        String timestamp = LocalDateTime.now().format(formatter);
-        String logEntry = "[" + timestamp + "] " + message;
-        
-        synchronized (logEntries) {
-            logEntries.add(logEntry);
+    /**
+     * Receives log events in batches from the log pump thread. Implementations are responsible
+     * for hopping onto the EDT, which keeps this class free of Swing so the headless daemon never loads it.
+     */
+    public interface LogListener {
+        void onEvents(List<LogEvent> events);
+        void onClear();
+    }
+
+    public static final String DEFAULT_SUBSYSTEM = "lingle";
+
+    // Fixed-size ring; once full the oldest events are overwritten
+    public static final int CAPACITY = 1 << 14;
+    private static final int MASK = CAPACITY - 1;
+    // Listeners get at most one batch per frame (~30 fps) no matter how fast installers log
+    private static final long PUMP_INTERVAL_MS = 33;
+    // A burst that gets this far ahead of the pump wakes it early and waits briefly for it
+    private static final long HIGH_WATER = CAPACITY / 2;
+    private static final long MAX_BACKPRESSURE_MS = 100;
+    private static final long BACKPRESSURE_PARK_NS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private static final AtomicReferenceArray<LogEvent> ring = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicLong nextSeq = new AtomicLong();
+    // Where the log panel was last cleared. Only views honour it; listeners still get every event
+    private static volatile long clearedBefore = 0;
+
+    private static final ThreadLocal<String> threadSubsystem = ThreadLocal.withInitial(() -> DEFAULT_SUBSYSTEM);
+    private static final Set<String> subsystems = ConcurrentHashMap.newKeySet();
+
+    private static final List<LogListener> listeners = new CopyOnWriteArrayList<>();
+    private static volatile ScheduledExecutorService pump;
+    private static volatile Thread pumpThread;
+    private static final AtomicBoolean drainRequested = new AtomicBoolean();
+    // Threads that must never wait on the pump; the GUI sets this to its EDT check
+    private static volatile BooleanSupplier backpressureExempt = () -> false;
+    // Only touched on the pump thread
+    private static long delivered = 0;
+    // delivered as seen by logging threads
+    private static volatile long deliveredSeq = 0;
+
+    /**
+     * Tags everything the current thread logs with the given subsystem until changed again.
+     * Returns the previous value so callers can restore it.
+     */
+    public static String setSubsystem(String subsystem) {
+        String previous = threadSubsystem.get();
+        threadSubsystem.set(subsystem == null ? DEFAULT_SUBSYSTEM : subsystem);
+        return previous;
+    }
+
+    /** The subsystem the current thread is logging under. */
+    public static String getSubsystem() {
+        return threadSubsystem.get();
+    }
+
+    public static void log(LogEvent.Level level, String subsystem, String message, Throwable throwable) {
+        subsystems.add(subsystem);
+        long seq = nextSeq.getAndIncrement();
+        ring.set((int) (seq & MASK), new LogEvent(seq, System.currentTimeMillis(), level, subsystem, message, throwable));
+        if (pump != null && seq - deliveredSeq >= HIGH_WATER && Thread.currentThread() != pumpThread
+                && !backpressureExempt.getAsBoolean()) {
+            awaitPump(seq);
         }
-        
-        // Update all registered text areas
-        SwingUtilities.invokeLater(() -> {
-            synchronized (listeners) {
-                for (JTextArea listener : listeners) {
-                    listener.append(logEntry + "\n");
-                    listener.setCaretPosition(listener.getDocument().getLength());
-                }
+    }
+
+    /**
+     * Marks threads that log but must never be held back by a burst, such as the EDT. Their events
+     * still go into the ring; they only skip the wait for the pump.
+     */
+    public static void exemptFromBackpressure(BooleanSupplier currentThreadExempt) {
+        backpressureExempt = currentThreadExempt;
+    }
+
+    // Listeners (the log file above all) must see every event, so a burst is held back until the pump
+    // catches up rather than wrapping the ring. Bounded, so a stuck listener cannot stall logging.
+    private static void awaitPump(long seq) {
+        ScheduledExecutorService p = pump;
+        if (p == null) return;
+        if (drainRequested.compareAndSet(false, true)) {
+            try {
+                p.execute(() -> {
+                    drainRequested.set(false);
+                    drain();
+                });
+            } catch (RuntimeException e) {
+                drainRequested.set(false);
+                return;
             }
-        });
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_BACKPRESSURE_MS);
+        while (seq - deliveredSeq >= HIGH_WATER && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(BACKPRESSURE_PARK_NS);
+        }
+    }
+
+    private static void log(LogEvent.Level level, String message) {
+        log(level, threadSubsystem.get(), message, null);
+    }
+
+    public static void log(String message) {
+        log(LogEvent.Level.INFO, message);
     }
 
     public static void logAction(String action) {
-        log("ACTION: " + action);
+        log(LogEvent.Level.ACTION, action);
     }
 
     public static void logSuccess(String message) {
-        log("SUCCESS: " + message);
+        log(LogEvent.Level.SUCCESS, message);
+    }
+
+    public static void logWarn(String message) {
+        log(LogEvent.Level.WARN, message);
     }
 
     public static void logError(String message) {
-        log("ERROR: " + message);
+        log(LogEvent.Level.ERROR, message);
     }
 
-    public static void logError(String message, Exception e) {
-        log("ERROR: " + message + " - " + e.getClass().getSimpleName() + ": " + e.getMessage());
-        // Log stack trace for detailed debugging
-        StringBuilder stackTrace = new StringBuilder();
-        for (StackTraceElement element : e.getStackTrace()) {
-            stackTrace.append("    at ").append(element.toString()).append("\n");
-        }
-        if (stackTrace.length() > 0) {
-            log("Stack trace:\n" + stackTrace.toString().trim());
-        }
-        // Log cause if present
-        if (e.getCause() != null) {
-            log("Caused by: " + e.getCause().getClass().getSimpleName() + ": " + e.getCause().getMessage());
-        }
+    public static void logError(String message, Throwable e) {
+        // The stack trace travels with the event; the panel shows the summary, files get the full trace
+        log(LogEvent.Level.ERROR, threadSubsystem.get(),
+                message + " - " + e.getClass().getSimpleName() + ": " + e.getMessage(), e);
     }
 
     public static void logInfo(String message) {
-        log("INFO: " + message);
+        log(LogEvent.Level.INFO, message);
     }
 
     public static void logCommand(String command) {
-        log("COMMAND: " + command);
+        log(LogEvent.Level.COMMAND, command);
     }
 
     public static void logOutput(String output) {
         // Log output line by line, preserving terminal-like formatting
-        if (output != null && !output.isEmpty()) {
-            for (String line : output.split("\n")) {
-                log("OUTPUT: " + line);
-            }
+        if (output == null || output.isEmpty()) return;
+        String subsystem = threadSubsystem.get();
+        int start = 0;
+        int len = output.length();
+        while (start < len) {
+            int nl = output.indexOf('\n', start);
+            int end = nl < 0 ? len : nl;
+            log(LogEvent.Level.OUTPUT, subsystem, output.substring(start, end), null);
+            start = end + 1;
         }
     }
 
-    public static void registerListener(JTextArea textArea) {
-        // Add existing logs to the new listener BEFORE adding to listeners list
-        // This prevents double printing
-        SwingUtilities.invokeLater(() -> {
-            synchronized (logEntries) {
-                for (String entry : logEntries) {
-                    textArea.append(entry + "\n");
-                }
-                textArea.setCaretPosition(textArea.getDocument().getLength());
-            }
-
-            // Only add to listeners AFTER replay is complete
-            synchronized (listeners) {
-                listeners.add(textArea);
-            }
+    public static void registerListener(LogListener listener) {
+        // Replay and subscribe on the pump thread so the listener sees every event exactly once
+        ensurePump().execute(() -> {
+            List<LogEvent> history = collect(null, null, retainedSeq(), delivered, Integer.MAX_VALUE, false);
+            if (!history.isEmpty()) listener.onEvents(history);
+            listeners.add(listener);
         });
     }
 
-    public static void unregisterListener(JTextArea textArea) {
-        synchronized (listeners) {
-            listeners.remove(textArea);
-        }
+    public static void unregisterListener(LogListener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Sequence number of the oldest event still held in memory and not cleared from view. */
+    public static long firstSeq() {
+        return Math.max(clearedBefore, retainedSeq());
+    }
+
+    // Oldest event still in the ring, cleared or not
+    static long retainedSeq() {
+        return Math.max(0, nextSeq.get() - CAPACITY);
     }
 
-    public static String getAllLogs() {
-        synchronized (logEntries) {
-            return String.join("\n", logEntries);
+    /** Sequence number the next event will get. */
+    public static long endSeq() {
+        return nextSeq.get();
+    }
+
+    /** The event with the given sequence number, or null if it was overwritten, cleared or not published yet. */
+    public static LogEvent get(long seq) {
+        if (seq < clearedBefore) return null;
+        LogEvent e = ring.get((int) (seq & MASK));
+        return e != null && e.getSeq() == seq ? e : null;
+    }
+
+    /**
+     * One page of events starting at fromSeq, oldest first. A null level set or subsystem matches everything.
+     * Continue with the last returned event's seq + 1 to read the next page. The page ends early at an
+     * event that has been claimed but not yet published.
+     */
+    public static List<LogEvent> query(Set<LogEvent.Level> levels, String subsystem, long fromSeq, int limit) {
+        return collect(levels, subsystem, fromSeq, nextSeq.get(), limit, true);
+    }
+
+    /** Like query() with no filters, but ignores clear(): the log file keeps what the panel hides. */
+    static List<LogEvent> queryRetained(long fromSeq, int limit) {
+        return collect(null, null, fromSeq, nextSeq.get(), limit, false);
+    }
+
+    private static List<LogEvent> collect(Set<LogEvent.Level> levels, String subsystem, long fromSeq, long end, int limit,
+                                          boolean honourClear) {
+        long cutoff = honourClear ? clearedBefore : 0;
+        List<LogEvent> page = new ArrayList<>(Math.max(0, Math.min(limit, 1024)));
+        for (long seq = Math.max(fromSeq, Math.max(cutoff, retainedSeq())); seq < end && page.size() < limit; seq++) {
+            LogEvent e = ring.get((int) (seq & MASK));
+            // Claimed but not yet published: stop here so a caller continuing after this page cannot skip it
+            if (e == null || e.getSeq() < seq) break;
+            if (e.getSeq() > seq || seq < cutoff) continue; // overwritten, or cleared meanwhile
+            if (levels != null && !levels.contains(e.getLevel())) continue;
+            if (subsystem != null && !subsystem.equals(e.getSubsystem())) continue;
+            page.add(e);
         }
+        return page;
+    }
+
+    /** Every subsystem that has logged so far, sorted. */
+    public static List<String> getSubsystems() {
+        return Collections.unmodifiableList(new ArrayList<>(new TreeSet<>(subsystems)));
     }
 
+    /** Hides everything logged so far from views. Listeners, and with them the log file, still get every event. */
     public static void clear() {
-        synchronized (logEntries) {
-            logEntries.clear();
-        }
-        
-        SwingUtilities.invokeLater(() -> {
-            synchronized (listeners) {
-                for (JTextArea listener : listeners) {
-                    listener.setText("");
-                }
+        clearedBefore = nextSeq.get();
+        Runnable notify = () -> {
+            for (LogListener listener : listeners) {
+                listener.onClear();
             }
-        });
+        };
+        // Run on the pump so a batch drained before the clear cannot land after it
+        if (pump != null) pump.execute(notify);
+        else notify.run();
+    }
+
+    private static synchronized ScheduledExecutorService ensurePump() {
+        if (pump == null) {
+            pump = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "lingle-log-pump");
+                t.setDaemon(true);
+                pumpThread = t;
+                return t;
+            });
+            delivered = nextSeq.get();
+            deliveredSeq = delivered;
+            pump.scheduleWithFixedDelay(LingleLogger::drain, PUMP_INTERVAL_MS, PUMP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+        return pump;
+    }
+
+    private static void drain() {
+        long upTo = nextSeq.get();
+        if (upTo - delivered > CAPACITY) delivered = upTo - CAPACITY; // dropped while we were behind
+
+        List<LogEvent> batch = new ArrayList<>();
+        while (delivered < upTo) {
+            LogEvent e = ring.get((int) (delivered & MASK));
+            if (e == null || e.getSeq() < delivered) break; // claimed but not yet published, pick it up next frame
+            if (e.getSeq() == delivered) batch.add(e);
+            delivered++;
+        }
+        deliveredSeq = delivered;
+        if (batch.isEmpty()) return;
+
+        for (LogListener listener : listeners) {
+            try {
+                listener.onEvents(batch);
+            } catch (RuntimeException ignored) {}
+        }
     }
 }
@@ -181,6 +181,7 @@ public class LingleState {
             Path cfg = getConfigFilePath();
             Files.createDirectories(cfg.getParent());
 
+            // Values already in config.json may be user overrides; detection only fills in missing ones
             String existing = Files.exists(cfg) ? Files.readString(cfg) : null;
             String gpu = null;
             String distro = null;
@@ -191,8 +192,8 @@ public class LingleState {
                     distro = prev.optString("distro", null);
                 } catch (Exception ignored) {}
             }
-            if (gpu == null || gpu.isBlank()) gpu = DistroDetector.getGPU();
-            if (distro == null || distro.isBlank()) distro = DistroDetector.getDistro();
+            if (gpu == null || gpu.isBlank()) gpu = HardwareProfile.get().getGpu();
+            if (distro == null || distro.isBlank()) distro = HardwareProfile.get().getDistro();
 
             Map<String, Object> ordered = new LinkedHashMap<>();
             if (gpu != null) ordered.put("gpu", gpu);
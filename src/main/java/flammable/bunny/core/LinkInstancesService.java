@@ -1,7 +1,7 @@
 package flammable.bunny.core;
 
 import flammable.bunny.ui.UIUtils;
-import javax.swing.*;
+import java.awt.Window;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
@@ -75,7 +75,7 @@ public class LinkInstancesService {
         }
     }
 
-    public static void installCreateDirsService(JFrame parent) {
+    public static void installCreateDirsService(Window parent) {
         try {
             LingleLogger.logInfo("Installing Lingle startup service...");
 
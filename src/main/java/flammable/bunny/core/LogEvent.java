@@ -0,0 +1,81 @@
+package flammable.bunny.core;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/** One structured log entry. Formatting is deferred until the entry is displayed or written to disk. */
+public final class LogEvent {
+
+    public enum Level {
+        DEBUG("DEBUG: "),
+        INFO("INFO: "),
+        ACTION("ACTION: "),
+        COMMAND("COMMAND: "),
+        OUTPUT("OUTPUT: "),
+        SUCCESS("SUCCESS: "),
+        WARN("WARN: "),
+        ERROR("ERROR: ");
+
+        private final String prefix;
+
+        Level(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public String prefix() {
+            return prefix;
+        }
+    }
+
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final long seq;
+    private final long time;
+    private final Level level;
+    private final String subsystem;
+    private final String message;
+    private final Throwable throwable;
+
+    LogEvent(long seq, long time, Level level, String subsystem, String message, Throwable throwable) {
+        this.seq = seq;
+        this.time = time;
+        this.level = level;
+        this.subsystem = subsystem;
+        this.message = message;
+        this.throwable = throwable;
+    }
+
+    public long getSeq() { return seq; }
+    public long getTime() { return time; }
+    public Level getLevel() { return level; }
+    public String getSubsystem() { return subsystem; }
+    public String getMessage() { return message; }
+    public Throwable getThrowable() { return throwable; }
+
+    public String formatTime() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault()).format(formatter);
+    }
+
+    /** Single-line form used by the log panel: [time] LEVEL: message */
+    public String format() {
+        return "[" + formatTime() + "] " + level.prefix() + message;
+    }
+
+    /** Full form used for files and exports, including subsystem and stack trace. */
+    public void appendDetailed(StringBuilder sb) {
+        sb.append('[').append(formatTime()).append("] [").append(subsystem).append("] ")
+                .append(level.prefix()).append(message).append('\n');
+        Throwable t = throwable;
+        String lead = "";
+        while (t != null) {
+            sb.append("    ").append(lead).append(t.getClass().getName()).append(": ").append(t.getMessage()).append('\n');
+            for (StackTraceElement element : t.getStackTrace()) {
+                sb.append("        at ").append(element).append('\n');
+            }
+            t = t.getCause() == t ? null : t.getCause();
+            lead = "Caused by: ";
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package flammable.bunny.core;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes LingleLogger events to ~/.local/share/lingle/logs/&lt;name&gt;.log from a background thread.
+ * Logging threads never touch the disk: the appender subscribes to the log pump, which hands over
+ * every event roughly once a frame, so bursts of installer output reach the file long before the
+ * in-memory ring could wrap around.
+ * Files rotate at MAX_FILE_BYTES into &lt;name&gt;.1.log … &lt;name&gt;.N.log, oldest deleted.
+ * The GUI and the daemon use different names so they never append to the same file.
+ */
+public final class LogFileAppender {
+
+    private static final long MAX_FILE_BYTES = 5L * 1024 * 1024;
+    private static final int MAX_ROTATED_FILES = 5;
+    private static final int PAGE_SIZE = 512;
+    // Batches waiting for the disk; a full queue holds the pump back instead of growing without bound
+    private static final int MAX_QUEUED_BATCHES = 64;
+
+    private static final LingleLogger.LogListener LISTENER = new LingleLogger.LogListener() {
+        @Override
+        public void onEvents(List<LogEvent> events) {
+            ExecutorService w = writer;
+            if (w == null) return;
+            try {
+                w.execute(() -> append(events));
+            } catch (RejectedExecutionException ignored) {
+                // stopping, or interrupted while waiting for room; stop() catches up from the ring
+            }
+        }
+
+        @Override
+        public void onClear() {
+            // Clearing the log panel only hides events from views; they still arrive here and reach the file
+        }
+    };
+
+    private static String baseName = "lingle";
+    private static volatile ExecutorService writer;
+    private static OutputStream out;
+    private static long fileBytes;
+    // Next sequence number the file expects; events below it were written already
+    private static long nextSeq;
+
+    private LogFileAppender() {}
+
+    public static Path getLogDir() {
+        return Path.of(System.getProperty("user.home"), ".local", "share", "lingle", "logs");
+    }
+
+    public static Path getCurrentLogFile() {
+        return getLogDir().resolve(baseName + ".log");
+    }
+
+    /** Starts the writer thread. Events logged before this call are still written if they are in the ring. */
+    public static synchronized void start(String name) {
+        if (writer != null) return;
+        baseName = name;
+        writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(MAX_QUEUED_BATCHES), r -> {
+            Thread t = new Thread(r, "lingle-log-writer");
+            t.setDaemon(true);
+            return t;
+        }, LogFileAppender::waitForRoom);
+        nextSeq = LingleLogger.retainedSeq();
+        // The pump replays what is already in the ring, then delivers every new batch
+        LingleLogger.registerListener(LISTENER);
+        Runtime.getRuntime().addShutdownHook(new Thread(LogFileAppender::stop));
+    }
+
+    /** Writes whatever is still pending and closes the file. */
+    public static void stop() {
+        ExecutorService w;
+        synchronized (LogFileAppender.class) {
+            w = writer;
+            writer = null;
+        }
+        if (w == null) return;
+        LingleLogger.unregisterListener(LISTENER);
+        w.shutdown();
+        try {
+            w.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Events the pump had not handed over yet are read straight from the ring
+        List<LogEvent> page;
+        while (!(page = LingleLogger.queryRetained(nextSeqSnapshot(), PAGE_SIZE)).isEmpty()) {
+            append(page);
+        }
+        closeQuietly();
+    }
+
+    // Blocks the pump until the writer has room, so batches stay in order; logging threads in turn back off
+    private static void waitForRoom(Runnable task, ThreadPoolExecutor executor) {
+        try {
+            while (!executor.isShutdown()) {
+                if (executor.getQueue().offer(task, 100, TimeUnit.MILLISECONDS)) return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        throw new RejectedExecutionException("log writer stopping");
+    }
+
+    private static synchronized long nextSeqSnapshot() {
+        return nextSeq;
+    }
+
+    private static synchronized void append(List<LogEvent> events) {
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (LogEvent e : events) {
+                if (e.getSeq() < nextSeq) continue; // already written
+                if (e.getSeq() > nextSeq) {
+                    sb.append("... ").append(e.getSeq() - nextSeq).append(" log entries dropped before they could be written\n");
+                }
+                e.appendDetailed(sb);
+                nextSeq = e.getSeq() + 1;
+                if (sb.length() >= 64 * 1024) {
+                    write(sb);
+                    sb.setLength(0);
+                }
+            }
+            write(sb);
+            if (out != null) out.flush();
+        } catch (IOException e) {
+            // Nothing sensible to log to; drop this batch and retry with a fresh file next time
+            closeQuietly();
+        }
+    }
+
+    private static void write(StringBuilder sb) throws IOException {
+        if (sb.length() == 0) return;
+        if (out == null) open();
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        out.write(bytes);
+        fileBytes += bytes.length;
+        if (fileBytes >= MAX_FILE_BYTES) {
+            closeQuietly();
+            rotate();
+        }
+    }
+
+    private static void open() throws IOException {
+        Path file = getCurrentLogFile();
+        Files.createDirectories(file.getParent());
+        fileBytes = Files.exists(file) ? Files.size(file) : 0;
+        if (fileBytes >= MAX_FILE_BYTES) {
+            rotate();
+            fileBytes = 0;
+        }
+        out = new BufferedOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), 64 * 1024);
+    }
+
+    private static void rotate() throws IOException {
+        Path dir = getLogDir();
+        Files.deleteIfExists(dir.resolve(baseName + "." + MAX_ROTATED_FILES + ".log"));
+        for (int i = MAX_ROTATED_FILES - 1; i >= 1; i--) {
+            Path src = dir.resolve(baseName + "." + i + ".log");
+            if (Files.exists(src)) {
+                Files.move(src, dir.resolve(baseName + "." + (i + 1) + ".log"), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Path current = getCurrentLogFile();
+        if (Files.exists(current)) {
+            Files.move(current, dir.resolve(baseName + ".1.log"), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void closeQuietly() {
+        try {
+            if (out != null) out.close();
+        } catch (IOException ignored) {}
+        out = null;
+    }
+}
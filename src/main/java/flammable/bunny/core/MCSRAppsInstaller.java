@@ -1,11 +1,8 @@
 package flammable.bunny.core;
 
 import java.io.*;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.file.*;
+import java.util.Locale;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
@@ -20,34 +17,56 @@ public class MCSRAppsInstaller {
 
 
     public static void installModCheck() throws IOException, InterruptedException {
-        System.out.println("Installing ModCheck...");
-        ensureMCSRAppsDir();
-        String fileName = downloadLatestJarFromRepo(MODCHECK_REPO);
-        System.out.println("ModCheck installed successfully to ~/mcsr-apps/" + fileName);
+        install("ModCheck", null);
     }
 
 
     public static void installNinjabrainBot() throws IOException, InterruptedException {
-        System.out.println("Installing Ninjabrain Bot...");
-        ensureMCSRAppsDir();
-        String fileName = downloadLatestJarFromRepo(NINJABRAIN_REPO);
-        System.out.println("Ninjabrain Bot installed successfully to ~/mcsr-apps/" + fileName);
+        install("Ninjabrain Bot", null);
     }
 
 
     public static void installPacemanTracker() throws IOException, InterruptedException {
-        System.out.println("Installing Paceman Tracker...");
-        ensureMCSRAppsDir();
-        String fileName = downloadLatestJarFromRepo(PACEMAN_REPO);
-        System.out.println("Paceman Tracker installed successfully to ~/mcsr-apps/" + fileName);
+        install("Paceman Tracker", null);
     }
 
 
     public static void installMapCheck() throws IOException, InterruptedException {
-        System.out.println("Installing MapCheck...");
+        install("MapCheck", null);
+    }
+
+
+    /** Downloads the latest release jar of one of the apps above; listener gets byte progress and may be null. */
+    public static void install(String app, DownloadManager.Listener listener) throws IOException, InterruptedException {
+        String repo = switch (app) {
+            case "ModCheck" -> MODCHECK_REPO;
+            case "Ninjabrain Bot" -> NINJABRAIN_REPO;
+            case "Paceman Tracker" -> PACEMAN_REPO;
+            case "MapCheck" -> MAPCHECK_REPO;
+            default -> throw new IOException("Unknown MCSR app: " + app);
+        };
+        System.out.println("Installing " + app + "...");
         ensureMCSRAppsDir();
-        String fileName = downloadLatestJarFromRepo(MAPCHECK_REPO);
-        System.out.println("MapCheck installed successfully to ~/mcsr-apps/" + fileName);
+        String fileName = downloadLatestJarFromRepo(repo, listener);
+        System.out.println(app + " installed successfully to ~/mcsr-apps/" + fileName);
+    }
+
+
+    /** True when ~/mcsr-apps already holds a jar for the app, e.g. map-check-1.2.jar for MapCheck. */
+    public static boolean isInstalled(String app) {
+        String key = normalize(app).replace("tracker", "");
+        Path dir = Path.of(MCSR_APPS_DIR);
+        if (!Files.isDirectory(dir)) return false;
+        try (var files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString())
+                    .anyMatch(name -> name.endsWith(".jar") && normalize(name).startsWith(key));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]", "");
     }
 
 
@@ -60,35 +79,22 @@ public class MCSRAppsInstaller {
     }
 
 
-    private static String downloadLatestJarFromRepo(String repo) throws IOException, InterruptedException {
-        HttpClient client = HttpClient.newBuilder()
-                .followRedirects(HttpClient.Redirect.ALWAYS)
-                .build();
-
-        String apiUrl = "https://api.github.com/repos/" + repo + "/releases/latest";
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(apiUrl))
-                .header("Accept", "application/vnd.github+json")
-                .GET()
-                .build();
-
-        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-        if (response.statusCode() != 200) {
-            throw new IOException("Failed to get release info for " + repo + ": HTTP " + response.statusCode());
-        }
-
-        JSONObject releaseJson = new JSONObject(response.body());
+    private static String downloadLatestJarFromRepo(String repo, DownloadManager.Listener listener) throws IOException, InterruptedException {
+        JSONObject releaseJson = DownloadCache.latestRelease(repo);
         JSONArray assets = releaseJson.getJSONArray("assets");
 
         String downloadUrl = null;
         String jarFileName = null;
+        String sha256 = null;
         for (int i = 0; i < assets.length(); i++) {
             JSONObject asset = assets.getJSONObject(i);
             String name = asset.getString("name");
             if (name.endsWith(".jar")) {
                 downloadUrl = asset.getString("browser_download_url");
                 jarFileName = name;
+                // Newer releases publish "sha256:<hex>" per asset
+                String digest = asset.optString("digest", "");
+                if (digest.startsWith("sha256:")) sha256 = digest.substring("sha256:".length());
                 break;
             }
         }
@@ -98,16 +104,10 @@ public class MCSRAppsInstaller {
         }
 
         System.out.println("Downloading from: " + downloadUrl);
-        HttpRequest downloadRequest = HttpRequest.newBuilder()
-                .uri(URI.create(downloadUrl))
-                .GET()
-                .build();
-
-        Path outputPath = Path.of(MCSR_APPS_DIR, jarFileName);
-        HttpResponse<Path> downloadResponse = client.send(downloadRequest, HttpResponse.BodyHandlers.ofFile(outputPath));
-
-        if (downloadResponse.statusCode() != 200) {
-            throw new IOException("Failed to download JAR from " + downloadUrl + ": HTTP " + downloadResponse.statusCode() + "Please Report this to the Lingle Discord Server");
+        try {
+            DownloadCache.fetchArtifact(downloadUrl, sha256, Path.of(MCSR_APPS_DIR, jarFileName), listener);
+        } catch (IOException e) {
+            throw new IOException("Failed to download JAR from " + downloadUrl + ": " + e.getMessage() + " Please Report this to the Lingle Discord Server", e);
         }
 
         return jarFileName;
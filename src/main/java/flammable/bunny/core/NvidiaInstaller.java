@@ -4,22 +4,17 @@ import java.io.IOException;
 
 public class NvidiaInstaller {
 
-    public static void installNvidiaDependencies(String pkgManager) throws IOException, InterruptedException {
+    /** Packages added to the session's PackagePlan; fails early on machines without an NVIDIA GPU. */
+    public static String packagesFor(String pkgManager) throws IOException {
         String gpu = DistroDetector.getGPU();
         if (gpu == null || !gpu.toLowerCase().contains("nvidia")) {
             throw new IOException("NVIDIA GPU not detected. This feature is only for NVIDIA users.");
         }
 
-        String installCmd = switch (pkgManager) {
-            case "pacman" -> "pacman -S --noconfirm nvidia-prime";
-            case "dnf" -> "dnf install -y akmod-nvidia xorg-x11-drv-nvidia-cuda";
-            case "apt" -> "apt update && apt install -y nvidia-prime";
+        return switch (pkgManager) {
+            case "pacman", "apt" -> "nvidia-prime";
+            case "dnf" -> "akmod-nvidia xorg-x11-drv-nvidia-cuda";
             default -> throw new IOException("Unsupported package manager for NVIDIA dependencies");
         };
-
-        int exitCode = ElevatedInstaller.runElevatedBash(installCmd);
-        if (exitCode != 0) {
-            throw new IOException("Failed to install NVIDIA dependencies");
-        }
     }
 }
@@ -1,36 +1,36 @@
 package flammable.bunny.core;
 
+import org.json.JSONArray;
+import org.json.JSONObject;
+
 import java.io.*;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.file.*;
 import java.util.Comparator;
 
 public class OBSPipeWireInstaller {
 
-    private static final String PLUGIN_URL = "https://github.com/dimtpap/obs-pipewire-audio-capture/releases/download/1.2.1/linux-pipewire-audio-1.2.1.tar.gz";
+    private static final String PLUGIN_REPO = "dimtpap/obs-pipewire-audio-capture";
+    private static final String PLUGIN_TAG = "1.2.1";
+    private static final String PLUGIN_ASSET = "linux-pipewire-audio-1.2.1.tar.gz";
+    private static final String PLUGIN_URL = "https://github.com/" + PLUGIN_REPO + "/releases/download/" + PLUGIN_TAG + "/" + PLUGIN_ASSET;
     private static final String OBS_CONFIG_DIR = System.getProperty("user.home") + "/.config/obs-studio";
     private static final String PLUGINS_DIR = OBS_CONFIG_DIR + "/plugins";
 
-    public static void installPipeWireDependencies(String pkgManager) throws IOException, InterruptedException {
-        System.out.println("Installing PipeWire dependencies...");
-
-        if ("pacman".equals(pkgManager)) {
-            runCommand("pacman -S --noconfirm wireplumber pipewire pipewire-pulse pipewire-alsa pipewire-jack");
-        } else if ("dnf".equals(pkgManager)) {
-            runCommand("dnf install -y wireplumber pipewire pipewire-pulseaudio pipewire-alsa pipewire-jack-audio-connection-kit");
-        } else if ("apt".equals(pkgManager)) {
-            runCommand("apt install -y wireplumber pipewire pipewire-pulse-session-manager pipewire-audio-client-libraries pipewire-jack");
-        } else {
-            throw new IOException("Unsupported package manager: " + pkgManager);
-        }
-
-        System.out.println("PipeWire dependencies installed successfully!");
+    /** PipeWire packages the plugin needs, added to the session's PackagePlan. */
+    public static String pipeWirePackagesFor(String pkgManager) throws IOException {
+        return switch (pkgManager) {
+            case "pacman" -> "wireplumber pipewire pipewire-pulse pipewire-alsa pipewire-jack";
+            case "dnf" -> "wireplumber pipewire pipewire-pulseaudio pipewire-alsa pipewire-jack-audio-connection-kit";
+            case "apt" -> "wireplumber pipewire pipewire-pulse-session-manager pipewire-audio-client-libraries pipewire-jack";
+            default -> throw new IOException("Unsupported package manager: " + pkgManager);
+        };
     }
 
     public static void installOBSPipeWirePlugin() throws IOException, InterruptedException {
+        installOBSPipeWirePlugin(null);
+    }
+
+    public static void installOBSPipeWirePlugin(DownloadManager.Listener listener) throws IOException, InterruptedException {
         System.out.println("Installing OBS PipeWire Audio Capture plugin...");
 
         // Ensure plugin directories exist
@@ -40,66 +40,46 @@ public class OBSPipeWireInstaller {
             System.out.println("Created plugins directory: " + PLUGINS_DIR);
         }
 
-        // Download plugin archive to temp location
-        String tempDir = System.getProperty("java.io.tmpdir");
-        Path tempArchive = Path.of(tempDir, "linux-pipewire-audio-1.2.1.tar.gz");
-        Path tempExtractDir = Path.of(tempDir, "obs-pipewire-extract-" + System.nanoTime());
-        Files.createDirectories(tempExtractDir);
-
         System.out.println("Downloading OBS PipeWire plugin...");
-        HttpClient client = HttpClient.newBuilder()
-                .followRedirects(HttpClient.Redirect.ALWAYS)
-                .build();
-
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(PLUGIN_URL))
-                .GET()
-                .build();
-
-        HttpResponse<Path> response = client.send(request, HttpResponse.BodyHandlers.ofFile(tempArchive));
-
-        if (response.statusCode() != 200) {
-            throw new IOException("Failed to download plugin: HTTP " + response.statusCode());
-        }
+        Path archive = DownloadCache.fetchBlob(PLUGIN_URL, pluginSha256(), listener);
 
+        // Extract straight from the cached archive into a sibling directory, then swap it in, so a
+        // failed extraction leaves the installed plugin untouched
         System.out.println("Extracting plugin archive...");
-        ProcessBuilder pb = new ProcessBuilder("tar", "-xzf", tempArchive.toString(), "-C", tempExtractDir.toString());
-        pb.inheritIO();
-        int exitCode = pb.start().waitFor();
-
-        if (exitCode != 0) {
-            throw new IOException("Failed to extract plugin archive with exit code: " + exitCode);
-        }
-
-        Path candidate = tempExtractDir.resolve("linux-pipewire-audio");
-        Path candidateUnderObs = tempExtractDir.resolve("obs-plugins").resolve("linux-pipewire-audio");
-        Path sourceDir;
-        if (Files.isDirectory(candidate)) {
-            sourceDir = candidate;
-        } else if (Files.isDirectory(candidateUnderObs)) {
-            sourceDir = candidateUnderObs;
-        } else {
-            try (var stream = Files.walk(tempExtractDir)) {
-                sourceDir = stream
-                    .filter(Files::isDirectory)
-                    .filter(p -> p.getFileName().toString().equals("linux-pipewire-audio"))
-                    .findFirst()
-                    .orElseThrow(() -> new IOException("Could not locate extracted linux-pipewire-audio directory"));
-            }
-        }
-
         Path targetDir = pluginsDir.resolve("linux-pipewire-audio");
-        if (Files.exists(targetDir)) {
-            deleteRecursively(targetDir);
+        Path stagingDir = pluginsDir.resolve(".linux-pipewire-audio.new");
+        deleteRecursively(stagingDir);
+        int files;
+        try (InputStream in = Files.newInputStream(archive)) {
+            files = TarGzExtractor.extract(in, "linux-pipewire-audio", stagingDir);
+        } catch (IOException e) {
+            deleteRecursively(stagingDir);
+            throw new IOException("Failed to extract plugin archive: " + e.getMessage(), e);
+        }
+        if (files == 0) {
+            deleteRecursively(stagingDir);
+            throw new IOException("Could not locate linux-pipewire-audio in the plugin archive");
         }
-        copyRecursively(sourceDir, targetDir);
 
-        Files.deleteIfExists(tempArchive);
-        deleteRecursively(tempExtractDir);
+        deleteRecursively(targetDir);
+        Files.move(stagingDir, targetDir, StandardCopyOption.ATOMIC_MOVE);
 
         System.out.println("OBS PipeWire Audio Capture plugin installed successfully to " + targetDir);
     }
 
+    // The archive is extracted into OBS's plugin directory, so it is only used with the digest GitHub publishes for it
+    private static String pluginSha256() throws IOException, InterruptedException {
+        JSONArray assets = DownloadCache.releaseByTag(PLUGIN_REPO, PLUGIN_TAG).getJSONArray("assets");
+        for (int i = 0; i < assets.length(); i++) {
+            JSONObject asset = assets.getJSONObject(i);
+            if (!asset.getString("name").equals(PLUGIN_ASSET)) continue;
+            String digest = asset.optString("digest", "");
+            if (digest.startsWith("sha256:")) return digest.substring("sha256:".length());
+            break;
+        }
+        throw new IOException("No SHA-256 published for " + PLUGIN_ASSET + "; refusing to install an unverified plugin");
+    }
+
     private static void deleteRecursively(Path path) throws IOException {
         if (!Files.exists(path)) return;
         try (var walk = Files.walk(path)) {
@@ -108,28 +88,4 @@ public class OBSPipeWireInstaller {
             });
         }
     }
-
-    private static void copyRecursively(Path source, Path target) throws IOException {
-        Files.walk(source).forEach(p -> {
-            try {
-                Path rel = source.relativize(p);
-                Path dest = target.resolve(rel);
-                if (Files.isDirectory(p)) {
-                    Files.createDirectories(dest);
-                } else {
-                    Files.createDirectories(dest.getParent());
-                    Files.copy(p, dest, StandardCopyOption.REPLACE_EXISTING);
-                }
-            } catch (IOException e) {
-                throw new UncheckedIOException(e);
-            }
-        });
-    }
-
-    private static void runCommand(String command) throws IOException, InterruptedException {
-        int exitCode = ElevatedInstaller.runElevatedBash(command);
-        if (exitCode != 0) {
-            throw new IOException("Command failed with exit code " + exitCode + ": " + command);
-        }
-    }
 }
@@ -6,8 +6,8 @@ import java.awt.Color;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import static flammable.bunny.ui.UIUtils.showDarkMessage;
 
@@ -19,7 +19,6 @@ public class PackageInstaller {
     private static final int ERR_PACUR_INSTALL_FAILED = 2001;
     private static final int ERR_PACUR_DIR_NOT_FOUND = 2002;
     private static final int ERR_PACUR_VERSION_NOT_FOUND = 2003;
-    private static final int ERR_UPDATE_SCRIPT_FAILED = 2004;
     private static final int ERR_BUILD_SCRIPT_FAILED = 2005;
     private static final int ERR_WAYWALL_CLONE_FAILED = 2006;
     private static final int ERR_WAYWALL_BUILD_FAILED = 2007;
@@ -34,6 +33,8 @@ public class PackageInstaller {
     private static final int ERR_MAPCHECK_INSTALL_FAILED = 6004;
     private static final int ERR_GENERAL_SETUP = 2999;
 
+    private static final String PACUR_IMAGE_LABEL = "lingle.dockerfile-sha256";
+
     private static final Map<String, Map<String, String>> PACKAGE_MAPPINGS = new HashMap<>();
 
     static {
@@ -88,9 +89,41 @@ public class PackageInstaller {
         PACKAGE_MAPPINGS.put("MapCheck", new HashMap<>());
     }
 
+    private static final int PROGRESS_SCALE = 1000;
+
     private static volatile boolean installationCancelled = false;
 
     public static void installPackages(List<String> packageNames, JFrame parent) {
+        installPackages(packageNames, parent, null);
+    }
+
+    /**
+     * Whether a setup-screen entry already looks installed, answered from the PackageInventory
+     * snapshot and the MCSR apps folder. The first call may run the inventory query, so keep it off the EDT.
+     */
+    public static boolean isInstalled(String item) {
+        PackageInventory inv = PackageInventory.get();
+        String pm = inv.getPackageManager();
+        return switch (item) {
+            case "Waywall + GLFW" -> inv.hasCommand("waywall") || inv.hasPackage("waywall");
+            case "Prism Launcher" -> inv.hasCommand("prismlauncher") || inv.hasPackage("prismlauncher");
+            case "Discord + OpenAsar" -> inv.hasCommand("discord") || inv.hasCommand("Discord") || inv.hasPackage("discord");
+            case "OBS Studio" -> inv.hasCommand("obs");
+            case "Nvidia Dependencies" -> inv.hasCommand("prime-run") || ("dnf".equals(pm) && inv.hasPackage("akmod-nvidia"));
+            case "Jemalloc" -> {
+                try {
+                    yield pm != null && inv.hasAll(JemallocInstaller.packagesFor(pm));
+                } catch (IOException e) {
+                    yield false;
+                }
+            }
+            case "ModCheck", "Ninjabrain Bot", "Paceman Tracker", "MapCheck" -> MCSRAppsInstaller.isInstalled(item);
+            default -> false;
+        };
+    }
+
+    /** Like installPackages(List, JFrame), running onFinished on the EDT once the summary is shown. */
+    public static void installPackages(List<String> packageNames, JFrame parent, Runnable onFinished) {
         LingleLogger.logInfo("Starting package installation...");
         String pkgManager = detectPackageManager();
         if (pkgManager == null) {
@@ -100,14 +133,6 @@ public class PackageInstaller {
         }
         LingleLogger.logInfo("Package manager detected: " + pkgManager);
 
-        int tempSteps = 0;
-        for (String pkg : packageNames) {
-            if (pkg.equals("Waywall + GLFW")) tempSteps += 7;
-            else if (pkg.equals("OBS Studio")) tempSteps += 3;
-            else tempSteps += 1;
-        }
-        final int totalSteps = tempSteps;
-
         installationCancelled = false;
 
         JDialog progressDialog = new JDialog(parent, "Installing Packages", false);
@@ -115,7 +140,7 @@ public class PackageInstaller {
         panel.setBackground(new Color(43, 43, 43));
         panel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
 
-        JProgressBar progressBar = new JProgressBar(0, totalSteps);
+        JProgressBar progressBar = new JProgressBar(0, PROGRESS_SCALE);
         progressBar.setStringPainted(true);
         progressBar.setString("Starting installation...");
         progressBar.setForeground(new Color(106, 153, 85));
@@ -157,245 +182,16 @@ public class PackageInstaller {
         List<String> success = new ArrayList<>();
 
         Thread installThread = new Thread(() -> {
-            AtomicInteger currentStep = new AtomicInteger(0);
-
+            LingleLogger.setSubsystem("install");
             try {
-                List<String> regularPackages = new ArrayList<>();
-                boolean hasWaywall = false;
-                boolean hasPrism = false;
-                boolean hasDiscord = false;
-                boolean hasOBS = false;
-                boolean hasDebounce = false;
-                boolean hasNvidia = false;
-                boolean hasJemalloc = false;
-                List<String> mcsrApps = new ArrayList<>();
-
-                for (String pkgName : packageNames) {
-                    switch (pkgName) {
-                        case "Waywall + GLFW" -> hasWaywall = true;
-                        case "Prism Launcher" -> hasPrism = true;
-                        case "Discord + OpenAsar" -> hasDiscord = true;
-                        case "OBS Studio" -> hasOBS = true;
-                        case "Decrease Linux Debounce Time" -> hasDebounce = true;
-                        case "Nvidia Dependencies" -> hasNvidia = true;
-                        case "ModCheck", "Ninjabrain Bot", "Paceman Tracker", "MapCheck" -> mcsrApps.add(pkgName);
-                        case "Jemalloc" -> hasJemalloc = true;
-                        default -> {
-                            Map<String, String> mapping = PACKAGE_MAPPINGS.get(pkgName);
-                            if (mapping != null && mapping.containsKey(pkgManager)) {
-                                String pkg = mapping.get(pkgManager);
-                                if (!pkg.isEmpty()) regularPackages.add(pkg);
-                            }
-                        }
-                    }
-                }
-
-                if (installationCancelled) {
-                    LingleLogger.logInfo("Installation cancelled before starting");
-                    return;
-                }
-
-                if (hasWaywall) {
-                    LingleLogger.logInfo("Installing Waywall + GLFW...");
-                    if (!isSupportedDistro(pkgManager)) {
-                        LingleLogger.logError("Waywall: Unsupported distro for package manager: " + pkgManager);
-                        errors.add(formatError(ERR_UNSUPPORTED_DISTRO, "Waywall: Unsupported distro"));
-                    } else {
-                        if ("dnf".equals(pkgManager)) {
-                            try {
-                                if (installationCancelled) return;
-                                updateProgress(progressBar, currentStep.incrementAndGet(), totalSteps, "Installing Fedora Waywall dependencies");
-                                LingleLogger.logInfo("Installing Fedora Waywall dependencies...");
-                                FedoraInstaller.installWaywallDependencies();
-                                LingleLogger.logSuccess("Fedora Waywall dependencies installed");
-                            } catch (Exception e) {
-                                LingleLogger.logError("Waywall Fedora dependencies failed", e);
-                                errors.add(formatError(ERR_INSTALL_FAILED, "Waywall Fedora dependencies: " + e.getMessage()));
-                            }
-                        }
-                        addPackageIfAvailable("Git", pkgManager, regularPackages);
-                        addPackageIfAvailable("Podman", pkgManager, regularPackages);
-                        addPackageIfAvailable("Docker", pkgManager, regularPackages);
-                        addPackageIfAvailable("Go", pkgManager, regularPackages);
-                    }
-                }
-
-                if (installationCancelled) return;
-
-                if (hasPrism) {
-                    LingleLogger.logInfo("Installing Prism Launcher...");
-                    if ("dnf".equals(pkgManager)) {
-                        try {
-                            updateProgress(progressBar, currentStep.incrementAndGet(), totalSteps, "Installing Prism Launcher (COPR)");
-                            LingleLogger.logInfo("Installing Prism Launcher via COPR...");
-                            FedoraInstaller.installPrismLauncher();
-                            LingleLogger.logSuccess("Prism Launcher installed successfully");
-                            success.add("Prism Launcher");
-                        } catch (Exception e) {
-                            LingleLogger.logError("Prism Launcher installation failed", e);
-                            errors.add(formatError(ERR_PRISM_INSTALL_FAILED, "Prism Launcher: " + e.getMessage()));
-                        }
-                    } else {
-                        addPackageIfAvailable("Prism Launcher", pkgManager, regularPackages);
-                    }
-                }
-
-                if (hasOBS) {
-                    if ("pacman".equals(pkgManager)) {
-                        try {
-                            updateProgress(progressBar, currentStep.incrementAndGet(), totalSteps, "Installing OBS Studio (Chaotic-AUR)");
-                            LingleLogger.logInfo("Installing OBS Studio via Chaotic-AUR...");
-                            ChaoticAURInstaller.installOBS();
-                            LingleLogger.logSuccess("OBS Studio installed successfully");
-                            success.add("OBS Studio");
-                        } catch (Exception e) {
-                            LingleLogger.logError("OBS Studio installation failed", e);
-                            errors.add(formatError(ERR_OBS_INSTALL_FAILED, "OBS Studio: " + e.getMessage()));
-                        }
-                    } else {
-                        addPackageIfAvailable("OBS Studio", pkgManager, regularPackages);
-                    }
-
-                    try {
-                        updateProgress(progressBar, currentStep.incrementAndGet(), totalSteps, "Installing PipeWire dependencies");
-                        LingleLogger.logInfo("Installing PipeWire dependencies for OBS...");
-                        OBSPipeWireInstaller.installPipeWireDependencies(pkgManager);
-                        LingleLogger.logSuccess("PipeWire dependencies installed");
-
-                        updateProgress(progressBar, currentStep.incrementAndGet(), totalSteps, "Installing OBS PipeWire plugin");
-                        LingleLogger.logInfo("Installing OBS PipeWire plugin...");
-                        OBSPipeWireInstaller.installOBSPipeWirePlugin();
-                        LingleLogger.logSuccess("OBS PipeWire plugin installed successfully");
-                    } catch (Exception e) {
-                        LingleLogger.logError("OBS PipeWire installation failed", e);
-                        errors.add(formatError(ERR_OBS_INSTALL_FAILED, "OBS PipeWire plugin: " + e.getMessage()));
-                    }
-                }
-
-                if (hasDiscord) {
-                    addPackageIfAvailable("Discord", pkgManager, regularPackages);
-                }
-
-                if (installationCancelled) return;
-
-                if (!regularPackages.isEmpty()) {
-                    try {
-                        updateProgress(progressBar, currentStep.incrementAndGet(), totalSteps, "Installing packages via " + pkgManager);
-                        LingleLogger.logInfo("Installing regular packages: " + String.join(", ", regularPackages));
-                        executeInstall(pkgManager, regularPackages);
-                        LingleLogger.logSuccess("Regular packages installed successfully");
-
-                        if (hasPrism && !"dnf".equals(pkgManager)) success.add("Prism Launcher");
-                        if (hasOBS && !"pacman".equals(pkgManager)) success.add("OBS Studio");
-                        if (hasDiscord) success.add("Discord");
-                    } catch (Exception e) {
-                        LingleLogger.logError("Package installation failed", e);
-                        errors.add(formatError(ERR_INSTALL_FAILED, "Package install: " + e.getMessage()));
-                    }
-                }
-
-                if (installationCancelled) return;
-
-                if (hasDiscord && !errors.stream().anyMatch(e -> e.contains("Discord"))) {
-                    try {
-                        updateProgress(progressBar, currentStep.incrementAndGet(), totalSteps, "Configuring Discord (OpenAsar)");
-                        LingleLogger.logInfo("Configuring Discord with OpenAsar...");
-                        DiscordInstaller.installCustomAppAsar(pkgManager);
-                        LingleLogger.logSuccess("Discord OpenAsar configured");
-                    } catch (Exception e) {
-                        LingleLogger.logError("Discord OpenAsar configuration failed", e);
-                        errors.add(formatError(ERR_DISCORD_INSTALL_FAILED, "Discord OpenAsar: " + e.getMessage()));
-                    }
-                }
-
-                if (installationCancelled) return;
-
-                for (String app : mcsrApps) {
-                    if (installationCancelled) return;
-                    try {
-                        updateProgress(progressBar, currentStep.incrementAndGet(), totalSteps, "Downloading " + app);
-                        LingleLogger.logInfo("Installing " + app + "...");
-                        switch (app) {
-                            case "ModCheck" -> MCSRAppsInstaller.installModCheck();
-                            case "Ninjabrain Bot" -> MCSRAppsInstaller.installNinjabrainBot();
-                            case "Paceman Tracker" -> MCSRAppsInstaller.installPacemanTracker();
-                            case "MapCheck" -> MCSRAppsInstaller.installMapCheck();
-                        }
-                        LingleLogger.logSuccess(app + " installed successfully");
-                        success.add(app);
-                    } catch (Exception e) {
-                        int errorCode = switch (app) {
-                            case "ModCheck" -> ERR_MODCHECK_INSTALL_FAILED;
-                            case "Ninjabrain Bot" -> ERR_NINJABRAIN_INSTALL_FAILED;
-                            case "Paceman Tracker" -> ERR_PACEMAN_INSTALL_FAILED;
-                            case "MapCheck" -> ERR_MAPCHECK_INSTALL_FAILED;
-                            default -> ERR_INSTALL_FAILED;
-                        };
-                        LingleLogger.logError(app + " installation failed", e);
-                        errors.add(formatError(errorCode, app + ": " + e.getMessage()));
-                    }
-                }
-
-                if (installationCancelled) return;
-
-                if (hasWaywall && !errors.stream().anyMatch(e -> e.contains("Waywall"))) {
-                    try {
-                        LingleLogger.logInfo("Setting up Waywall + GLFW...");
-                        setupWaywallGLFW(progressBar, currentStep.get(), totalSteps);
-                        currentStep.addAndGet(7);
-                        LingleLogger.logSuccess("Waywall + GLFW setup completed");
-                        success.add("Waywall + GLFW");
-                    } catch (Exception e) {
-                        LingleLogger.logError("Waywall setup failed", e);
-                        errors.add(formatError(ERR_GENERAL_SETUP, "Waywall setup: " + e.getMessage()));
-                    }
-                }
-
-                if (installationCancelled) return;
-
-                if (hasDebounce) {
-                    try {
-                        updateProgress(progressBar, currentStep.incrementAndGet(), totalSteps, "Installing debounce configuration");
-                        LingleLogger.logInfo("Installing debounce configuration...");
-                        DebounceInstaller.installDebounceScript();
-                        LingleLogger.logSuccess("Debounce configuration installed");
-                        success.add("Decrease Linux Debounce Time");
-                    } catch (Exception e) {
-                        LingleLogger.logError("Debounce configuration failed", e);
-                        errors.add(formatError(ERR_INSTALL_FAILED, "Debounce config: " + e.getMessage()));
-                    }
-                }
-
-                if (installationCancelled) return;
-
-                if (hasJemalloc) {
-                    try {
-                        updateProgress(progressBar, currentStep.incrementAndGet(), totalSteps, "Installing Jemalloc" );
-                        LingleLogger.logInfo("Installing Jemalloc...");
-                        JemallocInstaller.installJemalloc();
-                        LingleLogger.logSuccess("Jemalloc installed successfully");
-                        success.add("Jemalloc");
-                    } catch (Exception e) {
-                        LingleLogger.logError("Jemalloc installation failed", e);
-                        errors.add(formatError(ERR_INSTALL_FAILED, "Jemalloc: " + e.getMessage()));
-                    }
-                }
-
-                if (installationCancelled) return;
-
-                if (hasNvidia) {
-                    try {
-                        updateProgress(progressBar, currentStep.incrementAndGet(), totalSteps, "Installing NVIDIA dependencies");
-                        LingleLogger.logInfo("Installing NVIDIA dependencies...");
-                        NvidiaInstaller.installNvidiaDependencies(pkgManager);
-                        LingleLogger.logSuccess("NVIDIA dependencies installed successfully");
-                        success.add("Nvidia Dependencies");
-                    } catch (Exception e) {
-                        LingleLogger.logError("NVIDIA dependencies installation failed", e);
-                        errors.add(formatError(ERR_INSTALL_FAILED, "NVIDIA dependencies: " + e.getMessage()));
-                    }
-                }
-
+                SetupScheduler scheduler = planSetup(packageNames, pkgManager, errors);
+                SetupScheduler.Outcome outcome = scheduler.run((fraction, message) -> updateProgress(progressBar, fraction, message));
+                success.addAll(outcome.getSucceeded());
+                errors.addAll(outcome.getErrors());
+                ProcessRunner.metricsSummary().forEach(line -> LingleLogger.logInfo("Process time, " + line));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                installationCancelled = true;
             } catch (Exception e) {
                 LingleLogger.logError("Unexpected error during installation", e);
                 errors.add(formatError(ERR_GENERAL_SETUP, "Unexpected error: " + e.getMessage()));
@@ -425,6 +221,7 @@ public class PackageInstaller {
                                         "Installed: " + String.join(", ", success) + "\n\n" +
                                         "Errors:\n" + String.join("\n", errors));
                     }
+                    if (onFinished != null) onFinished.run();
                 });
             }
         });
@@ -433,19 +230,303 @@ public class PackageInstaller {
         progressDialog.setVisible(true);
     }
 
-    private static void updateProgress(JProgressBar bar, int current, int total, String message) {
+    /**
+     * Turns the selected items into a task graph. All distro packages are collected into one
+     * PackagePlan and installed in a single transaction; downloads, the pacur/waywall build and the
+     * debounce quirk run next to it as soon as whatever they need is on the system.
+     */
+    private static SetupScheduler planSetup(List<String> packageNames, String pkgManager, List<String> errors) {
+        SetupScheduler scheduler = new SetupScheduler(() -> installationCancelled);
+        PackagePlan plan = new PackagePlan(pkgManager);
+        List<String> fromPlan = new ArrayList<>();
+        boolean hasWaywall = false;
+        boolean hasPrism = false;
+        boolean hasDiscord = false;
+        boolean hasOBS = false;
+        boolean hasDebounce = false;
+        boolean hasNvidia = false;
+        boolean hasJemalloc = false;
+        List<String> mcsrApps = new ArrayList<>();
+
+        for (String pkgName : packageNames) {
+            switch (pkgName) {
+                case "Waywall + GLFW" -> hasWaywall = true;
+                case "Prism Launcher" -> hasPrism = true;
+                case "Discord + OpenAsar" -> hasDiscord = true;
+                case "OBS Studio" -> hasOBS = true;
+                case "Decrease Linux Debounce Time" -> hasDebounce = true;
+                case "Nvidia Dependencies" -> hasNvidia = true;
+                case "ModCheck", "Ninjabrain Bot", "Paceman Tracker", "MapCheck" -> mcsrApps.add(pkgName);
+                case "Jemalloc" -> hasJemalloc = true;
+                default -> {
+                    if (addPackageIfAvailable(pkgName, pkgManager, plan)) fromPlan.add(pkgName);
+                }
+            }
+        }
+
+        // Repository setup has to happen before the one transaction below, which waits for each of
+        // these tasks to finish; if one fails, the packages it was meant to provide are dropped from
+        // the plan and the transaction goes ahead with the rest
+        List<String> repoSetup = new ArrayList<>();
+        if (hasWaywall) {
+            if (!isSupportedDistro(pkgManager)) {
+                LingleLogger.logError("Waywall: Unsupported distro for package manager: " + pkgManager);
+                errors.add(formatError(ERR_UNSUPPORTED_DISTRO, "Waywall: Unsupported distro"));
+                hasWaywall = false;
+            } else {
+                if ("dnf".equals(pkgManager)) {
+                    repoSetup.add("fedora-repos");
+                    scheduler.add(new SetupTask("fedora-repos", "Preparing Fedora repositories for Waywall", SetupTask.Kind.PACKAGES, 3,
+                            p -> runPrerequisite(plan, "Waywall + GLFW", FedoraInstaller::prepareWaywallRepositories))
+                            .onError(ERR_INSTALL_FAILED, "Waywall Fedora dependencies"));
+                    plan.add("Waywall + GLFW", FedoraInstaller.waywallPackages());
+                }
+                addPackageIfAvailable("Git", pkgManager, plan);
+                addPackageIfAvailable("Podman", pkgManager, plan);
+                addPackageIfAvailable("Docker", pkgManager, plan);
+                addPackageIfAvailable("Go", pkgManager, plan);
+            }
+        }
+
+        if (hasPrism) {
+            if ("dnf".equals(pkgManager)) {
+                repoSetup.add("prism-copr");
+                scheduler.add(new SetupTask("prism-copr", "Enabling Prism Launcher COPR", SetupTask.Kind.PACKAGES, 1,
+                        p -> runPrerequisite(plan, "Prism Launcher", FedoraInstaller::enablePrismCopr))
+                        .onError(ERR_PRISM_INSTALL_FAILED, "Prism Launcher"));
+                plan.add("Prism Launcher", FedoraInstaller.prismPackages());
+                fromPlan.add("Prism Launcher");
+            } else if (addPackageIfAvailable("Prism Launcher", pkgManager, plan)) {
+                fromPlan.add("Prism Launcher");
+            }
+        }
+
+        if (hasOBS) {
+            if ("pacman".equals(pkgManager)) {
+                repoSetup.add("obs-chaotic");
+                scheduler.add(new SetupTask("obs-chaotic", "Setting up Chaotic-AUR", SetupTask.Kind.PACKAGES, 1,
+                        p -> runPrerequisite(plan, "OBS Studio", ChaoticAURInstaller::setupRepository))
+                        .onError(ERR_OBS_INSTALL_FAILED, "OBS Studio"));
+                plan.add("OBS Studio", ChaoticAURInstaller.OBS_PACKAGE);
+                fromPlan.add("OBS Studio");
+            } else if (addPackageIfAvailable("OBS Studio", pkgManager, plan)) {
+                fromPlan.add("OBS Studio");
+            }
+            try {
+                plan.add("OBS PipeWire", OBSPipeWireInstaller.pipeWirePackagesFor(pkgManager));
+            } catch (IOException e) {
+                errors.add(formatError(ERR_OBS_INSTALL_FAILED, "OBS PipeWire dependencies: " + e.getMessage()));
+            }
+            // The plugin is a user-level download, it does not need OBS to be installed first
+            scheduler.add(new SetupTask("obs-plugin", "Installing OBS PipeWire plugin", SetupTask.Kind.NETWORK, 1,
+                    p -> OBSPipeWireInstaller.installOBSPipeWirePlugin(downloadProgress(p, "Downloading OBS PipeWire plugin")))
+                    .onError(ERR_OBS_INSTALL_FAILED, "OBS PipeWire plugin"));
+        }
+
+        if (hasDiscord && addPackageIfAvailable("Discord", pkgManager, plan)) {
+            fromPlan.add("Discord");
+        }
+
+        if (hasJemalloc) {
+            try {
+                plan.add("Jemalloc", JemallocInstaller.packagesFor(pkgManager));
+                fromPlan.add("Jemalloc");
+            } catch (IOException e) {
+                errors.add(formatError(ERR_INSTALL_FAILED, "Jemalloc: " + e.getMessage()));
+            }
+        }
+
+        if (hasNvidia) {
+            try {
+                plan.add("Nvidia Dependencies", NvidiaInstaller.packagesFor(pkgManager));
+                fromPlan.add("Nvidia Dependencies");
+            } catch (IOException e) {
+                errors.add(formatError(ERR_INSTALL_FAILED, "NVIDIA dependencies: " + e.getMessage()));
+            }
+        }
+
+        if (!plan.isEmpty()) {
+            scheduler.add(new SetupTask("packages", "Installing packages via " + pkgManager, SetupTask.Kind.PACKAGES, 6,
+                    p -> plan.install())
+                    .afterAttempt(repoSetup.toArray(new String[0]))
+                    .reportsSuccessAs(fromPlan.toArray(new String[0]))
+                    .onError(ERR_INSTALL_FAILED, "Package install"));
+        }
+
+        if (hasDiscord && scheduler.contains("packages")) {
+            scheduler.add(new SetupTask("discord-openasar", "Configuring Discord (OpenAsar)", SetupTask.Kind.SYSTEM, 1,
+                    p -> {
+                        // Already reported against Discord by the package task
+                        if (plan.hasFailed("Discord")) return;
+                        DiscordInstaller.installCustomAppAsar(pkgManager);
+                    })
+                    .after("packages")
+                    .onError(ERR_DISCORD_INSTALL_FAILED, "Discord OpenAsar"));
+        }
+
+        for (String app : mcsrApps) {
+            int errorCode = switch (app) {
+                case "ModCheck" -> ERR_MODCHECK_INSTALL_FAILED;
+                case "Ninjabrain Bot" -> ERR_NINJABRAIN_INSTALL_FAILED;
+                case "Paceman Tracker" -> ERR_PACEMAN_INSTALL_FAILED;
+                case "MapCheck" -> ERR_MAPCHECK_INSTALL_FAILED;
+                default -> ERR_INSTALL_FAILED;
+            };
+            scheduler.add(new SetupTask("app-" + app, "Downloading " + app, SetupTask.Kind.NETWORK, 1,
+                    p -> MCSRAppsInstaller.install(app, downloadProgress(p, "Downloading " + app)))
+                    .reportsSuccessAs(app).onError(errorCode, app));
+        }
+
+        if (hasWaywall) {
+            planWaywall(scheduler, pkgManager);
+        }
+
+        if (hasDebounce) {
+            scheduler.add(new SetupTask("debounce", "Installing debounce configuration", SetupTask.Kind.SYSTEM, 1,
+                    p -> DebounceInstaller.installDebounceScript())
+                    .reportsSuccessAs("Decrease Linux Debounce Time")
+                    .onError(ERR_INSTALL_FAILED, "Debounce config"));
+        }
+
+        return scheduler;
+    }
+
+    // Byte progress from DownloadManager shown as task progress, e.g. "Downloading ModCheck 1.2/3.4 MB"
+    private static DownloadManager.Listener downloadProgress(SetupTask.Progress progress, String label) {
+        long[] lastPercent = {-1};
+        return (done, total) -> {
+            if (total <= 0) return;
+            long percent = done * 100 / total;
+            if (percent == lastPercent[0]) return;
+            lastPercent[0] = percent;
+            progress.update(done / (double) total, String.format("%s %.1f/%.1f MB", label, done / 1e6, total / 1e6));
+        };
+    }
+
+    private interface Prerequisite {
+        void run() throws IOException, InterruptedException;
+    }
+
+    private static void runPrerequisite(PackagePlan plan, String owner, Prerequisite step) throws IOException, InterruptedException {
+        try {
+            step.run();
+        } catch (IOException e) {
+            plan.remove(owner);
+            throw e;
+        } finally {
+            // Repository setup installs keyrings and may upgrade the system
+            PackageInventory.invalidate();
+        }
+    }
+
+    // Waywall + GLFW as a chain: pacur and the clone only wait for the package transaction when
+    // the tool they need is not installed yet, so on most systems they overlap with it. The first
+    // step looks the upstream commit up in WaywallBuildCache; on a hit every step up to the install
+    // is a no-op and the cached package is installed directly.
+    private static void planWaywall(SetupScheduler scheduler, String pkgManager) {
+        String home = System.getProperty("user.home");
+        Path waywallDir = Path.of(home, "waywall");
+        PackageInventory inventory = PackageInventory.get();
+        String[] packages = scheduler.contains("packages") ? new String[]{"packages"} : new String[0];
+        String[] needsGo = inventory.hasCommand("go") ? new String[0] : packages;
+        String[] needsGit = inventory.hasCommand("git") ? new String[0] : packages;
+        String[] needsContainers = inventory.hasCommand("podman") || inventory.hasCommand("docker") ? new String[0] : packages;
+        WaywallBuild build = new WaywallBuild();
+
+        scheduler.add(new SetupTask("waywall-resolve", "Checking for a cached waywall build", SetupTask.Kind.NETWORK, 1,
+                p -> resolveWaywallBuild(build, pkgManager))
+                .after(needsGit));
+        scheduler.add(new SetupTask("pacur", "Downloading pacur", SetupTask.Kind.NETWORK, 2,
+                p -> { if (!build.isCached()) installPacur(); })
+                .after("waywall-resolve").after(needsGo)
+                .onError(ERR_GENERAL_SETUP, "Waywall setup"));
+        scheduler.add(new SetupTask("pacur-images", "Preparing the pacur container", SetupTask.Kind.BUILD, 4,
+                p -> { if (!build.isCached()) buildPacurImage(p, pkgManager); })
+                .after("pacur").after(needsContainers)
+                .onError(ERR_GENERAL_SETUP, "Waywall setup"));
+        scheduler.add(new SetupTask("waywall-clone", "Cloning waywall", SetupTask.Kind.NETWORK, 1,
+                p -> { if (!build.isCached()) cloneWaywall(waywallDir); })
+                .after("waywall-resolve")
+                .onError(ERR_GENERAL_SETUP, "Waywall setup"));
+        scheduler.add(new SetupTask("waywall-build", "Building waywall packages", SetupTask.Kind.BUILD, 4,
+                p -> {
+                    if (build.isCached()) return;
+                    buildWaywallPackages(waywallDir, pkgManager);
+                    cacheWaywallBuild(build, waywallDir, pkgManager);
+                })
+                .after("pacur-images", "waywall-clone")
+                .onError(ERR_GENERAL_SETUP, "Waywall setup"));
+        scheduler.add(new SetupTask("waywall-install", "Installing waywall package", SetupTask.Kind.PACKAGES, 1,
+                p -> installWaywallPackage(build.isCached() ? build.cached : findWaywallPackage(waywallDir, pkgManager), pkgManager))
+                .after("waywall-build").after(packages)
+                .reportsSuccessAs("Waywall + GLFW")
+                .onError(ERR_GENERAL_SETUP, "Waywall setup"));
+        scheduler.add(new SetupTask("waywall-config", "Cloning waywall configuration", SetupTask.Kind.NETWORK, 1,
+                p -> cloneWaywallConfig())
+                .after("waywall-install"));
+    }
+
+    // What waywall-resolve found, read by the later waywall steps on other scheduler threads
+    private static final class WaywallBuild {
+        volatile String pacurVersion;
+        volatile Path cached;
+
+        boolean isCached() {
+            return cached != null;
+        }
+    }
+
+    // A failed lookup only costs the cache hit, so it is logged rather than failing the chain
+    private static void resolveWaywallBuild(WaywallBuild build, String pkgManager) throws InterruptedException {
+        try {
+            String commit = WaywallBuildCache.resolveRemoteHead(WaywallBuildCache.WAYWALL_REPO);
+            build.pacurVersion = WaywallBuildCache.latestPacurVersion();
+            String key = WaywallBuildCache.key(commit, build.pacurVersion);
+            build.cached = WaywallBuildCache.find(key, pkgManager);
+            if (build.isCached()) {
+                LingleLogger.logSuccess("Using cached waywall build " + key + ", skipping pacur and the package build");
+            } else {
+                LingleLogger.logInfo("No cached waywall build for " + key);
+            }
+        } catch (IOException e) {
+            LingleLogger.logWarn("Could not check the waywall build cache: " + e.getMessage());
+        }
+    }
+
+    // Keyed by the commit that was actually cloned, which may be newer than the one resolved earlier
+    private static void cacheWaywallBuild(WaywallBuild build, Path waywallDir, String pkgManager) throws InterruptedException {
+        try {
+            Path pkgFile = WaywallBuildCache.findBuiltPackage(waywallDir.resolve("waywall-build"), pkgManager);
+            if (pkgFile == null) return;
+            String pacurVersion = build.pacurVersion != null
+                    ? build.pacurVersion
+                    : WaywallBuildCache.pacurVersionOf(findPacurDir());
+            String key = WaywallBuildCache.key(WaywallBuildCache.checkedOutCommit(waywallDir), pacurVersion);
+            WaywallBuildCache.store(key, pkgFile);
+        } catch (IOException e) {
+            LingleLogger.logWarn("Could not cache waywall build: " + e.getMessage());
+        }
+    }
+
+    private static void updateProgress(JProgressBar bar, double fraction, String message) {
+        int value = (int) Math.round(fraction * PROGRESS_SCALE);
+        String text = message.isEmpty() ? "Finishing up" : message;
         SwingUtilities.invokeLater(() -> {
-            bar.setValue(current);
-            bar.setString(message + " (" + current + "/" + total + ")");
+            bar.setValue(value);
+            bar.setString(text + " (" + value * 100 / PROGRESS_SCALE + "%)");
         });
     }
 
-    private static void addPackageIfAvailable(String pkgName, String pkgManager, List<String> toInstall) {
+    private static boolean addPackageIfAvailable(String pkgName, String pkgManager, PackagePlan plan) {
         Map<String, String> mapping = PACKAGE_MAPPINGS.get(pkgName);
         if (mapping != null && mapping.containsKey(pkgManager)) {
             String pkg = mapping.get(pkgManager);
-            if (!pkg.isEmpty()) toInstall.add(pkg);
+            if (!pkg.isEmpty()) {
+                plan.add(pkgName, pkg);
+                return true;
+            }
         }
+        return false;
     }
 
     private static boolean isSupportedDistro(String pkgManager) {
@@ -456,194 +537,117 @@ public class PackageInstaller {
         return DistroDetector.getPackageManager();
     }
 
-    private static void executeInstall(String mgr, List<String> pkgs) throws IOException, InterruptedException {
-        String joined = String.join(" ", pkgs);
-
-        String installCmd = switch (mgr) {
-            case "pacman" -> "pacman -S --noconfirm " + joined;
-            case "apt" -> "apt update && apt install -y " + joined;
-            case "dnf" -> "dnf install -y " + joined;
-            default -> throw new IOException("Unsupported package manager: " + mgr);
-        };
-
-        LingleLogger.logCommand(installCmd);
-        int exitCode = ElevatedInstaller.runElevatedBashWithOutput(installCmd);
-        LingleLogger.logInfo("Command exited with code: " + exitCode);
-        if (exitCode != 0) {
-            throw new IOException("Package installation failed with exit code: " + exitCode);
-        }
+    // Runs a command as the current user, logging its output; the process tree dies with a cancelled task
+    private static int runLogged(Path workDir, String... command) throws IOException, InterruptedException {
+        return ProcessRunner.of(command)
+                .directory(workDir)
+                .cancelWhen(() -> installationCancelled)
+                .run()
+                .getExitCode();
     }
 
-    private static void setupWaywallGLFW(JProgressBar progressBar, int baseStep, int totalSteps) throws Exception {
-        String home = System.getProperty("user.home");
-
-        if (installationCancelled) return;
-
-        updateProgress(progressBar, baseStep + 1, totalSteps, "Downloading pacur");
+    private static void installPacur() throws IOException, InterruptedException {
         LingleLogger.logInfo("Installing pacur via go install...");
-        String goCmd = "export PATH=$PATH:$HOME/go/bin && go install github.com/pacur/pacur@latest";
-        LingleLogger.logCommand(goCmd);
-        ProcessBuilder goInstall = new ProcessBuilder("bash", "-c", goCmd);
-        goInstall.redirectErrorStream(true);
-        Process goProc = goInstall.start();
-
-        // Capture and log output
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(goProc.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                LingleLogger.logOutput(line);
-            }
-        } catch (IOException e) {
-            LingleLogger.logError("Error reading go install output", e);
-        }
-
-        int goExitCode = goProc.waitFor();
+        int goExitCode = runLogged(null, "bash", "-c", "export PATH=$PATH:$HOME/go/bin && go install github.com/pacur/pacur@latest");
         LingleLogger.logInfo("go install exited with code: " + goExitCode);
         if (goExitCode != 0) {
             LingleLogger.logError("Failed to install pacur, exit code: " + goExitCode);
             throw new IOException(formatError(ERR_PACUR_INSTALL_FAILED, "Failed to install pacur"));
         }
         LingleLogger.logSuccess("pacur installed successfully");
+    }
 
-        if (installationCancelled) return;
-
-        Path pacurBase = Path.of(home, "go", "pkg", "mod", "github.com", "pacur");
+    private static Path findPacurDir() throws IOException {
+        Path pacurBase = Path.of(System.getProperty("user.home"), "go", "pkg", "mod", "github.com", "pacur");
         if (!Files.exists(pacurBase)) {
             LingleLogger.logError("Pacur directory not found at: " + pacurBase);
             throw new IOException(formatError(ERR_PACUR_DIR_NOT_FOUND, "Pacur directory not found"));
         }
 
-        Path pacurDir = Files.list(pacurBase)
-                .filter(p -> p.getFileName().toString().startsWith("pacur@"))
-                .findFirst()
-                .orElseThrow(() -> {
-                    LingleLogger.logError("Pacur version directory not found in: " + pacurBase);
-                    return new IOException(formatError(ERR_PACUR_VERSION_NOT_FOUND, "Pacur version not found"));
-                });
-        LingleLogger.logInfo("Found pacur directory: " + pacurDir);
-
-        if (installationCancelled) return;
-
-        updateProgress(progressBar, baseStep + 2, totalSteps, "Preparing pacur environment");
-        LingleLogger.logInfo("Preparing pacur environment...");
-        Path dockerDir = pacurDir.resolve("docker");
-        StringBuilder dirsToRemove = new StringBuilder();
-        Files.list(dockerDir).filter(Files::isDirectory).filter(p -> {
-            String name = p.getFileName().toString();
-            return !name.equals("archlinux") && !name.equals("fedora-42") && !name.equals("debian-trixie");
-        }).forEach(p -> {
-            if (dirsToRemove.length() > 0) dirsToRemove.append(" ");
-            dirsToRemove.append("'").append(p).append("'");
-        });
-
-        String combinedCmd = dirsToRemove.length() > 0 ?
-                String.format("rm -rf %s && cd '%s' && sed -i 's/su podman/podman/g; s/sudo podman/podman/g; s/sudo docker/docker/g' update.sh build.sh", dirsToRemove, dockerDir) :
-                String.format("cd '%s' && sed -i 's/su podman/podman/g; s/sudo podman/podman/g; s/sudo docker/docker/g' update.sh build.sh", dockerDir);
-
-        LingleLogger.logCommand(combinedCmd);
-        int sedExitCode = ElevatedInstaller.runElevatedBashWithOutput(combinedCmd);
-        LingleLogger.logInfo("sed/rm command exited with code: " + sedExitCode);
-        if (sedExitCode != 0) {
-            LingleLogger.logError("Failed to prepare pacur environment, exit code: " + sedExitCode);
-        } else {
-            LingleLogger.logSuccess("Pacur environment prepared");
-        }
-
-        if (installationCancelled) return;
-
-        updateProgress(progressBar, baseStep + 3, totalSteps, "Building pacur containers");
-        LingleLogger.logInfo("Running pacur update.sh to pull container images...");
-        Path updateScript = dockerDir.resolve("update.sh");
-        LingleLogger.logCommand("bash " + updateScript);
-
-        // Run as regular user since we removed sudo from the scripts
-        ProcessBuilder updateSh = new ProcessBuilder("bash", updateScript.toString());
-        updateSh.directory(dockerDir.toFile());
-        updateSh.redirectErrorStream(true);
-        Process updateProc = updateSh.start();
-
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(updateProc.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                LingleLogger.logOutput(line);
-            }
-        } catch (IOException e) {
-            LingleLogger.logError("Error reading update.sh output", e);
+        try (var dirs = Files.list(pacurBase)) {
+            Path pacurDir = dirs
+                    .filter(p -> p.getFileName().toString().startsWith("pacur@"))
+                    .findFirst()
+                    .orElseThrow(() -> {
+                        LingleLogger.logError("Pacur version directory not found in: " + pacurBase);
+                        return new IOException(formatError(ERR_PACUR_VERSION_NOT_FOUND, "Pacur version not found"));
+                    });
+            LingleLogger.logInfo("Found pacur directory: " + pacurDir);
+            return pacurDir;
         }
+    }
 
-        int updateExitCode = updateProc.waitFor();
-        LingleLogger.logInfo("update.sh exited with code: " + updateExitCode);
-        if (updateExitCode != 0) {
-            LingleLogger.logError("update.sh failed with exit code: " + updateExitCode);
-            throw new IOException(formatError(ERR_UPDATE_SCRIPT_FAILED, "update.sh failed"));
+    // Only the image build-packages.sh will use for this distro is built, directly with podman (or
+    // docker), and it is left alone while its label still matches pacur's Dockerfile for that target
+    private static void buildPacurImage(SetupTask.Progress progress, String pkgManager) throws IOException, InterruptedException {
+        String target = switch (pkgManager) {
+            case "pacman" -> "archlinux";
+            case "dnf" -> "fedora-42";
+            case "apt" -> "debian-trixie";
+            default -> throw new IOException(formatError(ERR_UNSUPPORTED_DISTRO, "No pacur image for " + pkgManager));
+        };
+        String engine = PackageInventory.get().hasCommand("podman") ? "podman" : "docker";
+        String image = "pacur/" + target;
+        Path contextDir = findPacurDir().resolve("docker").resolve(target);
+        Path dockerfile = contextDir.resolve("Dockerfile");
+        if (!Files.isRegularFile(dockerfile)) {
+            LingleLogger.logError("Dockerfile not found at: " + dockerfile);
+            throw new IOException(formatError(ERR_PACUR_VERSION_NOT_FOUND, "Pacur Dockerfile not found for " + target));
         }
-        LingleLogger.logSuccess("Pacur containers updated successfully");
-
-        if (installationCancelled) return;
-
-        LingleLogger.logInfo("Running pacur build.sh to build container images...");
-        Path buildScript = dockerDir.resolve("build.sh");
-        LingleLogger.logCommand("bash " + buildScript);
-
-        // Run as regular user since we removed sudo from the scripts
-        ProcessBuilder buildSh = new ProcessBuilder("bash", buildScript.toString());
-        buildSh.directory(dockerDir.toFile());
-        buildSh.redirectErrorStream(true);
-        Process buildShProc = buildSh.start();
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(buildShProc.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                LingleLogger.logOutput(line);
-            }
-        } catch (IOException e) {
-            LingleLogger.logError("Error reading build.sh output", e);
+        progress.update(0.05, "Checking " + image + " image");
+        String dockerfileSha = DownloadCache.sha256(dockerfile);
+        String current = imageLabel(engine, image, PACUR_IMAGE_LABEL);
+        if (dockerfileSha.equals(current)) {
+            LingleLogger.logSuccess(image + " is up to date, skipping the container build");
+            return;
         }
-
-        int buildShExitCode = buildShProc.waitFor();
-        LingleLogger.logInfo("build.sh exited with code: " + buildShExitCode);
-        if (buildShExitCode != 0) {
-            LingleLogger.logError("build.sh failed with exit code: " + buildShExitCode);
-            throw new IOException(formatError(ERR_BUILD_SCRIPT_FAILED, "build.sh failed"));
+        LingleLogger.logInfo(current == null
+                ? image + " not found, building it"
+                : image + " was built from a different Dockerfile, rebuilding it");
+
+        progress.update(0.1, "Building " + image + " image");
+        // --pull refreshes just this image's base, which is all update.sh was needed for
+        int buildExitCode = runLogged(contextDir, engine, "build", "--pull",
+                "--label", PACUR_IMAGE_LABEL + "=" + dockerfileSha,
+                "-t", image, contextDir.toString());
+        LingleLogger.logInfo(engine + " build exited with code: " + buildExitCode);
+        if (buildExitCode != 0) {
+            LingleLogger.logError(engine + " build failed with exit code: " + buildExitCode);
+            throw new IOException(formatError(ERR_BUILD_SCRIPT_FAILED, "Building " + image + " failed"));
         }
-        LingleLogger.logSuccess("Pacur containers built successfully");
+        LingleLogger.logSuccess(image + " built successfully");
+    }
 
-        if (installationCancelled) return;
+    // null when the image does not exist or has no such label
+    private static String imageLabel(String engine, String image, String label) throws IOException, InterruptedException {
+        ProcessRunner.Result inspect = ProcessRunner.of(engine, "image", "inspect",
+                        "--format", "{{ index .Config.Labels \"" + label + "\" }}", image)
+                .capture().quiet()
+                .timeout(Duration.ofSeconds(30))
+                .run();
+        String out = inspect.getStdout().trim();
+        if (!inspect.isSuccess() || out.isEmpty() || out.equals("<no value>")) return null;
+        return out;
+    }
 
-        updateProgress(progressBar, baseStep + 4, totalSteps, "Cloning waywall");
+    private static void cloneWaywall(Path waywallDir) throws IOException, InterruptedException {
         LingleLogger.logInfo("Cloning waywall repository...");
-        Path waywallDir = Path.of(home, "waywall");
         if (Files.exists(waywallDir)) {
             LingleLogger.logInfo("Removing existing waywall directory: " + waywallDir);
             deleteDirectory(waywallDir);
         }
 
-        String gitCloneCmd = "git clone https://github.com/ByPaco10/waywall " + waywallDir;
-        LingleLogger.logCommand(gitCloneCmd);
-        ProcessBuilder gitClone = new ProcessBuilder("git", "clone", "https://github.com/ByPaco10/waywall", waywallDir.toString());
-        gitClone.redirectErrorStream(true);
-        Process gitProc = gitClone.start();
-
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(gitProc.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                LingleLogger.logOutput(line);
-            }
+        try {
+            GitMirror.checkout(WaywallBuildCache.WAYWALL_REPO, null, waywallDir);
         } catch (IOException e) {
-            LingleLogger.logError("Error reading git clone output", e);
-        }
-
-        int gitExitCode = gitProc.waitFor();
-        LingleLogger.logInfo("git clone exited with code: " + gitExitCode);
-        if (gitExitCode != 0) {
-            LingleLogger.logError("Failed to clone waywall repository, exit code: " + gitExitCode);
+            LingleLogger.logError("Failed to clone waywall repository: " + e.getMessage());
             throw new IOException(formatError(ERR_WAYWALL_CLONE_FAILED, "Failed to clone waywall"));
         }
         LingleLogger.logSuccess("Waywall repository cloned successfully");
+    }
 
-        if (installationCancelled) return;
-
-        updateProgress(progressBar, baseStep + 5, totalSteps, "Building waywall packages");
+    private static void buildWaywallPackages(Path waywallDir, String pkgManager) throws IOException, InterruptedException {
         LingleLogger.logInfo("Building waywall packages...");
         Path buildPackagesScript = waywallDir.resolve("build-packages.sh");
         if (!Files.exists(buildPackagesScript)) {
@@ -651,119 +655,77 @@ public class PackageInstaller {
             throw new IOException(formatError(ERR_WAYWALL_BUILD_FAILED, "build-packages.sh not found"));
         }
 
-        String pkgManager = detectPackageManager();
-        String distroFlag = pkgManager != null ? switch (pkgManager) {
+        String distroFlag = switch (pkgManager) {
             case "pacman" -> "--arch";
             case "dnf" -> "--fedora";
             case "apt" -> "--debian";
             default -> null;
-        } : null;
-
-        String buildCmd = distroFlag != null ?
-            "bash " + buildPackagesScript + " " + distroFlag :
-            "bash " + buildPackagesScript;
+        };
         LingleLogger.logInfo("Running build-packages.sh with distro flag: " + (distroFlag != null ? distroFlag : "none"));
-        LingleLogger.logCommand(buildCmd);
 
         // Run as regular user since containers should be rootless
-        ProcessBuilder buildPackages = distroFlag != null ?
-                new ProcessBuilder("bash", buildPackagesScript.toString(), distroFlag) :
-                new ProcessBuilder("bash", buildPackagesScript.toString());
-        buildPackages.directory(waywallDir.toFile());
-        buildPackages.redirectErrorStream(true);
-        Process buildPkgProc = buildPackages.start();
-
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(buildPkgProc.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                LingleLogger.logOutput(line);
-            }
-        } catch (IOException e) {
-            LingleLogger.logError("Error reading build-packages.sh output", e);
-        }
-
-        int buildPkgExitCode = buildPkgProc.waitFor();
+        int buildPkgExitCode = distroFlag != null ?
+                runLogged(waywallDir, "bash", buildPackagesScript.toString(), distroFlag) :
+                runLogged(waywallDir, "bash", buildPackagesScript.toString());
         LingleLogger.logInfo("build-packages.sh exited with code: " + buildPkgExitCode);
         if (buildPkgExitCode != 0) {
             LingleLogger.logError("build-packages.sh failed with exit code: " + buildPkgExitCode);
             throw new IOException(formatError(ERR_WAYWALL_BUILD_FAILED, "build-packages.sh failed"));
         }
         LingleLogger.logSuccess("Waywall packages built successfully");
+    }
 
-        if (installationCancelled) return;
-
-        updateProgress(progressBar, baseStep + 6, totalSteps, "Installing waywall package");
-        LingleLogger.logInfo("Installing waywall package...");
+    private static Path findWaywallPackage(Path waywallDir, String pkgManager) throws IOException {
         Path buildDir = waywallDir.resolve("waywall-build");
         LingleLogger.logInfo("Looking for package files in: " + buildDir);
-        String installPackageCmd = null;
-
-        if (pkgManager != null) {
-            switch (pkgManager) {
-                case "pacman" -> {
-                    Path pkgFile = buildDir.resolve("waywall-0.5-1-x86_64.pkg.tar.zst");
-                    if (Files.exists(pkgFile)) {
-                        installPackageCmd = "pacman -U --noconfirm " + pkgFile;
-                        LingleLogger.logInfo("Found package: " + pkgFile);
-                    } else {
-                        LingleLogger.logError("Package not found: " + pkgFile);
-                    }
-                }
-                case "dnf" -> {
-                    Path rpmFile = buildDir.resolve("waywall-0.5-1.fc42.x86_64.rpm");
-                    if (Files.exists(rpmFile)) {
-                        // Use 'install' instead of 'localinstall' for dnf5 compatibility
-                        installPackageCmd = "dnf install -y " + rpmFile;
-                        LingleLogger.logInfo("Found package: " + rpmFile);
-                    } else {
-                        LingleLogger.logError("Package not found: " + rpmFile);
-                    }
-                }
-                case "apt" -> {
-                    Path debFile = buildDir.resolve("waywall_0.5-1_amd64.deb");
-                    if (Files.exists(debFile)) {
-                        installPackageCmd = "dpkg -i " + debFile;
-                        LingleLogger.logInfo("Found package: " + debFile);
-                    } else {
-                        LingleLogger.logError("Package not found: " + debFile);
-                    }
-                }
-            }
-        }
-
-        if (installPackageCmd != null) {
-            LingleLogger.logCommand(installPackageCmd);
-            int installExitCode = ElevatedInstaller.runElevatedBashWithOutput(installPackageCmd);
-            LingleLogger.logInfo("Package install exited with code: " + installExitCode);
-            if (installExitCode != 0) {
-                LingleLogger.logError("Failed to install waywall package, exit code: " + installExitCode);
-                throw new IOException(formatError(ERR_WAYWALL_PKG_INSTALL_FAILED, "Failed to install waywall package"));
-            }
-            LingleLogger.logSuccess("Waywall package installed successfully");
-        } else {
-            LingleLogger.logError("No suitable package file found for package manager: " + pkgManager);
+        Path pkgFile = WaywallBuildCache.findBuiltPackage(buildDir, pkgManager);
+        if (pkgFile == null) {
+            LingleLogger.logError("No waywall package found for package manager " + pkgManager + " in: " + buildDir);
             throw new IOException(formatError(ERR_WAYWALL_BUILD_FAILED, "Package file not found"));
         }
+        return pkgFile;
+    }
+
+    private static void installWaywallPackage(Path pkgFile, String pkgManager) throws IOException, InterruptedException {
+        LingleLogger.logInfo("Installing waywall package...");
+        LingleLogger.logInfo("Found package: " + pkgFile);
+
+        String installPackageCmd = switch (pkgManager) {
+            case "pacman" -> "pacman -U --noconfirm " + pkgFile;
+            // Use 'install' instead of 'localinstall' for dnf5 compatibility
+            case "dnf" -> "dnf install -y " + pkgFile;
+            default -> "dpkg -i " + pkgFile;
+        };
 
-        updateProgress(progressBar, baseStep + 7, totalSteps, "Waywall installation complete");
+        LingleLogger.logCommand(installPackageCmd);
+        int installExitCode;
+        try {
+            installExitCode = ElevatedInstaller.runElevatedBashWithOutput(installPackageCmd);
+        } finally {
+            PackageInventory.invalidate();
+        }
+        LingleLogger.logInfo("Package install exited with code: " + installExitCode);
+        if (installExitCode != 0) {
+            LingleLogger.logError("Failed to install waywall package, exit code: " + installExitCode);
+            throw new IOException(formatError(ERR_WAYWALL_PKG_INSTALL_FAILED, "Failed to install waywall package"));
+        }
+        LingleLogger.logSuccess("Waywall package installed successfully");
+    }
 
+    // Best effort: a missing generic config should not mark waywall itself as failed
+    private static void cloneWaywallConfig() {
         try {
             LingleLogger.logInfo("Cloning waywall configuration...");
-            Path cfgDir = Path.of(home, ".config", "waywall");
+            Path cfgDir = Path.of(System.getProperty("user.home"), ".config", "waywall");
             if (!Files.exists(cfgDir)) {
                 Files.createDirectories(cfgDir.getParent());
-                ProcessBuilder cloneCfg = new ProcessBuilder("git", "clone", "https://github.com/arjuncgore/waywall_generic_config.git", cfgDir.toString());
-                cloneCfg.inheritIO();
-                Process cloneProc = cloneCfg.start();
-                int cloneExitCode = cloneProc.waitFor();
-                if (cloneExitCode == 0) {
-                    LingleLogger.logSuccess("Waywall configuration cloned successfully");
-                } else {
-                    LingleLogger.logError("Failed to clone waywall config, exit code: " + cloneExitCode);
-                }
+                GitMirror.checkout("https://github.com/arjuncgore/waywall_generic_config.git", null, cfgDir);
+                LingleLogger.logSuccess("Waywall configuration cloned successfully");
             } else {
                 LingleLogger.logInfo("Waywall config already exists at: " + cfgDir);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (Exception e) {
             LingleLogger.logError("Error cloning waywall configuration", e);
         }
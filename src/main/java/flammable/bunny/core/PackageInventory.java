@@ -0,0 +1,137 @@
+package flammable.bunny.core;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * What is already on this machine: every installed distro package, read with one package-manager
+ * query, and every executable on PATH, read with one directory scan. The snapshot is kept for the
+ * session and dropped after each package transaction so the next lookup sees the new state.
+ */
+public final class PackageInventory {
+
+    private static volatile PackageInventory current;
+
+    private final String pkgManager;
+    private final Set<String> packages;
+    private final Set<String> commands;
+    private final boolean packagesKnown;
+
+    private PackageInventory(String pkgManager, Set<String> packages, boolean packagesKnown, Set<String> commands) {
+        this.pkgManager = pkgManager;
+        this.packages = packages;
+        this.packagesKnown = packagesKnown;
+        this.commands = commands;
+    }
+
+    /** Returns the current snapshot, building it on first use. */
+    public static PackageInventory get() {
+        PackageInventory inv = current;
+        if (inv != null) return inv;
+        synchronized (PackageInventory.class) {
+            if (current == null) current = load(DistroDetector.getPackageManager());
+            return current;
+        }
+    }
+
+    /** Forgets the snapshot; call after anything that installs or removes packages. */
+    public static void invalidate() {
+        current = null;
+    }
+
+    public String getPackageManager() { return pkgManager; }
+
+    /** False when the package manager could not be queried; hasPackage() then always answers false. */
+    public boolean isPackageListKnown() { return packagesKnown; }
+
+    /** Accepts pacman's repo/name form, e.g. chaotic-aur/obs-studio-stable. */
+    public boolean hasPackage(String name) {
+        return packages.contains(name.substring(name.lastIndexOf('/') + 1));
+    }
+
+    /** True when every package in a space-separated list is installed. */
+    public boolean hasAll(String names) {
+        for (String name : names.trim().split("\\s+")) {
+            if (!name.isEmpty() && !hasPackage(name)) return false;
+        }
+        return true;
+    }
+
+    public boolean hasCommand(String command) {
+        return commands.contains(command);
+    }
+
+    private static PackageInventory load(String pm) {
+        long start = System.nanoTime();
+        Set<String> commands = scanPath();
+        Set<String> packages = new HashSet<>();
+        boolean known = false;
+
+        String[] query = queryFor(pm);
+        if (query != null) {
+            try {
+                ProcessRunner.Result result = ProcessRunner.of(query)
+                        .capture().quiet()
+                        .timeout(Duration.ofSeconds(30))
+                        .run();
+                if (result.isSuccess()) {
+                    parse(pm, result.getStdout(), packages);
+                    known = true;
+                }
+            } catch (IOException e) {
+                LingleLogger.logWarn("Could not list installed packages: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        LingleLogger.logInfo("Package inventory: " + packages.size() + " packages, " + commands.size() +
+                " commands on PATH (" + (System.nanoTime() - start) / 1_000_000 + " ms)");
+        return new PackageInventory(pm, Collections.unmodifiableSet(packages), known, Collections.unmodifiableSet(commands));
+    }
+
+    private static String[] queryFor(String pm) {
+        if (pm == null) return null;
+        return switch (pm) {
+            case "pacman" -> new String[]{"pacman", "-Qq"};
+            case "apt" -> new String[]{"dpkg-query", "-W", "-f", "${Package} ${db:Status-Abbrev}\n"};
+            case "dnf", "zypper" -> new String[]{"rpm", "-qa", "--qf", "%{NAME}\n"};
+            default -> null;
+        };
+    }
+
+    private static void parse(String pm, String out, Set<String> into) {
+        for (String line : out.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            if ("apt".equals(pm)) {
+                // Only "ii" rows are actually installed; removed packages keep their config rows
+                int sp = line.indexOf(' ');
+                if (sp < 0 || !line.substring(sp + 1).startsWith("ii")) continue;
+                String name = line.substring(0, sp);
+                int colon = name.indexOf(':');
+                into.add(colon >= 0 ? name.substring(0, colon) : name);
+            } else {
+                into.add(line);
+            }
+        }
+    }
+
+    private static Set<String> scanPath() {
+        Set<String> commands = new HashSet<>();
+        String path = System.getenv("PATH");
+        if (path == null) return commands;
+        for (String dir : new LinkedHashSet<>(List.of(path.split(":")))) {
+            if (dir.isEmpty()) continue;
+            Path p = Path.of(dir);
+            if (!Files.isDirectory(p)) continue;
+            try (Stream<Path> s = Files.list(p)) {
+                s.filter(Files::isExecutable).forEach(f -> commands.add(f.getFileName().toString()));
+            } catch (IOException ignored) {}
+        }
+        return commands;
+    }
+}
@@ -0,0 +1,130 @@
+package flammable.bunny.core;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Collects every distro package a setup session needs and installs them in one package-manager
+ * transaction, so metadata is refreshed and dependencies are resolved once instead of per installer.
+ * Repository setup (COPR, RPM Fusion, Chaotic-AUR) still runs before the plan is installed.
+ */
+public final class PackagePlan {
+
+    private final String pkgManager;
+    private final Set<String> packages = new LinkedHashSet<>();
+    private final Map<String, List<String>> owners = new LinkedHashMap<>();
+
+    public PackagePlan(String pkgManager) {
+        this.pkgManager = pkgManager;
+    }
+
+    /**
+     * Adds packages on behalf of a selected item. Entries may hold several space-separated names,
+     * the way PACKAGE_MAPPINGS stores them; duplicates across items are installed once.
+     */
+    public synchronized PackagePlan add(String owner, String names) {
+        List<String> list = owners.computeIfAbsent(owner, k -> new ArrayList<>());
+        for (String name : names.trim().split("\\s+")) {
+            if (name.isEmpty()) continue;
+            packages.add(name);
+            list.add(name);
+        }
+        return this;
+    }
+
+    /** Drops an item's packages again, e.g. when the repository they come from could not be set up. */
+    public synchronized void remove(String owner) {
+        List<String> removed = owners.remove(owner);
+        if (removed == null) return;
+        for (String name : removed) {
+            boolean shared = owners.values().stream().anyMatch(l -> l.contains(name));
+            if (!shared) packages.remove(name);
+        }
+    }
+
+    public String getPackageManager() { return pkgManager; }
+    public synchronized boolean isEmpty() { return packages.isEmpty(); }
+    public synchronized Set<String> getPackages() { return new LinkedHashSet<>(packages); }
+
+    /** Items that asked for at least one package, in the order they were added. */
+    public synchronized List<String> getOwners() {
+        return new ArrayList<>(owners.keySet());
+    }
+
+    /**
+     * Runs the single transaction through the elevated shell, streaming its output to the log. One
+     * bad name makes the package manager reject the whole transaction, so when it fails every item
+     * is retried on its own and only the items that still fail are reported, each under its own name.
+     */
+    public synchronized void install() throws IOException, InterruptedException, SetupTask.PartialFailure {
+        List<String> missing = missing(packages);
+        if (missing.isEmpty()) {
+            if (!packages.isEmpty()) LingleLogger.logInfo("All " + packages.size() + " requested packages are already installed");
+            return;
+        }
+
+        LingleLogger.logInfo("Installing " + missing.size() + " of " + packages.size() + " packages for: " + String.join(", ", owners.keySet()));
+        int exitCode = run(installCommand(pkgManager, missing, true));
+        if (exitCode == 0) return;
+        if (owners.size() == 1) {
+            throw new IOException("Package installation for " + owners.keySet().iterator().next() + " failed with exit code: " + exitCode);
+        }
+
+        LingleLogger.logWarn("Package transaction failed with exit code " + exitCode + ", installing each item on its own");
+        Map<String, String> failed = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> owner : owners.entrySet()) {
+            List<String> left = missing(owner.getValue());
+            if (left.isEmpty()) continue;
+            LingleLogger.logInfo("Installing " + String.join(" ", left) + " for " + owner.getKey());
+            int code = run(installCommand(pkgManager, left, false));
+            if (code != 0) failed.put(owner.getKey(), "Package installation failed with exit code: " + code + " (" + String.join(" ", left) + ")");
+        }
+        if (failed.size() == owners.size()) {
+            throw new IOException("Package installation failed for " + String.join(", ", failed.keySet()));
+        }
+        if (!failed.isEmpty()) throw new SetupTask.PartialFailure(failed);
+    }
+
+    /** Whether an item's packages could not be installed by the last install(). */
+    public synchronized boolean hasFailed(String owner) {
+        List<String> names = owners.get(owner);
+        return names != null && !missing(names).isEmpty();
+    }
+
+    private static List<String> missing(Collection<String> names) {
+        PackageInventory inventory = PackageInventory.get();
+        List<String> missing = new ArrayList<>();
+        for (String name : names) {
+            if (!inventory.hasPackage(name)) missing.add(name);
+        }
+        return missing;
+    }
+
+    private static int run(String cmd) throws IOException, InterruptedException {
+        LingleLogger.logCommand(cmd);
+        int exitCode;
+        try {
+            exitCode = ElevatedInstaller.runElevatedBashWithOutput(cmd);
+        } finally {
+            PackageInventory.invalidate();
+        }
+        LingleLogger.logInfo("Command exited with code: " + exitCode);
+        return exitCode;
+    }
+
+    // One refresh at most, and none when retrying right after a transaction that already refreshed;
+    // packages that are already installed are left alone
+    static String installCommand(String mgr, Collection<String> pkgs, boolean refresh) throws IOException {
+        String joined = String.join(" ", pkgs);
+        return switch (mgr) {
+            case "pacman" -> "pacman -S --needed --noconfirm " + joined;
+            case "apt" -> (refresh ? "apt-get update && " : "") + "DEBIAN_FRONTEND=noninteractive apt-get install -y " + joined;
+            case "dnf" -> "dnf install -y " + joined;
+            case "zypper" -> "zypper --non-interactive install " + joined;
+            case "apk" -> "apk add " + joined;
+            case "xbps" -> (refresh ? "xbps-install -Sy " : "xbps-install -y ") + joined;
+            case "emerge" -> "emerge --noreplace " + joined;
+            default -> throw new IOException("Unsupported package manager: " + mgr);
+        };
+    }
+}
@@ -1,178 +1,430 @@
 package flammable.bunny.core;
 
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.nio.file.*;
-import java.nio.file.attribute.PosixFilePermission;
-import java.util.EnumSet;
-import java.util.Set;
-
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Builds the speedrun.com submission package for the run SpeedRunIGT recorded last:
+ *
+ *   <world>.zip              the run itself
+ *   Last5/<world>.zip        the five worlds played before it
+ *   Background/<world>.zip   worlds created after it (SeedQueue background worlds)
+ *   logs/<file>              the three newest game logs
+ *   manifest.json            size and SHA-256 of every entry above, see {@link SubmissionVerifier}
+ *
+ * Worlds are zipped concurrently on a fork-join pool and one writer adds the finished archives to
+ * the package in order as stored entries. Only as many worlds are built in memory at once as fit in
+ * a byte budget; a world too large for it is zipped by the writer straight into the package instead,
+ * so no world is ever held whole. Nothing is written to disk besides the package itself. While ADW
+ * runs the worlds are read from the {@link SubmissionStager} copy, which still has the ones ADW has
+ * deleted since.
+ */
 public final class PackagesforRunSubmissionZipper {
 
-    private PackagesforRunSubmissionZipper() {}
-
-    public static Path install(Path outDir) throws IOException {
-        if (!DependencyInstaller.ensureDeps(null))
-            throw new IOException("Missing required dependencies (jq, zip, python3).");
-
-        Path home = Path.of(System.getProperty("user.home"));
-        Path scriptsDir = home.resolve(".local/share/lingle/scripts");
-        Files.createDirectories(scriptsDir);
-
-        Path scriptPath = scriptsDir.resolve("src_auto_zip.py");
-
-        String script = """
-            #!/usr/bin/env python3
-            import json
-            import os
-            from sys import stderr, argv, exit
-            from datetime import datetime
-            import zipfile
-            from zipfile import ZipFile
-            import shutil
-
-            if len(argv) < 2:
-                print("Usage: src_auto_zip.py <output_directory>", file=stderr)
-                exit(2)
-
-            out_dir = argv[1]
-            if not os.path.isdir(out_dir):
-                print(f"Output directory does not exist: {out_dir}", file=stderr)
-                exit(2)
-
-            print("Zipping files...")
+    public static final String MANIFEST = "manifest.json";
+    static final int MANIFEST_FORMAT = 1;
 
-            home = os.environ.get("HOME")
-            if home is None:
-                print("$HOME is not defined.", file=stderr)
-                exit(1)
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd-HH-mm-ss");
+    // Region chunks are zlib-compressed already; the rest are compressed formats outright
+    private static final String[] STORED_EXTENSIONS = {".mca", ".mcr", ".mcc", ".png", ".zip", ".gz", ".jar"};
 
-            srigt_home = os.path.join(home, "speedrunigt")
+    // Worlds built in memory at once, by size on disk; a buffer can briefly need twice its size while it grows
+    private static final long IN_MEMORY_BUDGET = Math.max(32L << 20, Math.min(Runtime.getRuntime().maxMemory() / 8, 256L << 20));
+    private static final long STREAM_THRESHOLD = IN_MEMORY_BUDGET / 2;
 
-            json_path = os.path.join(srigt_home, "latest_world.json")
-            if not os.path.exists(json_path):
-                print(f"JSON file not found: {json_path}", file=stderr)
-                exit(4)
-
-            with open(json_path) as file:
-                latest_world = json.load(file)
-
-            world_path = latest_world['world_path']
-            path_components = world_path.split("/")
-
-            # Remove last two components from "<mc_dir>/saves/<world_name>"
-            mc_dir = "/".join(path_components[:-2:])
-
-            # Remove last component from "<mc_saves_dir>/<world_name>"
-            mc_saves_dir = "/".join(path_components[:-1:])
-
-            # Has the last component form "<mc_saves_dir>/<world_name>"
-            world_name = path_components[-1]
-
-            today = datetime.now()
-            str_date = today.strftime("%H-%M-%S")
-            str_time = today.strftime("%Y-%m-%d")
-            output_file_name = os.path.join(out_dir, f"LIGNLE-SRC-Submission-{str_time}-{str_date}.zip")
-            zip = ZipFile(output_file_name, "w", zipfile.ZIP_DEFLATED)
-
-            saves = os.listdir(mc_saves_dir)
-
-            latest_world_write_time = None
-            for save_dir in saves:
-                if save_dir == world_name:
-                    full_save_path = os.path.join(mc_saves_dir, save_dir)
-                    zip_name = f"{save_dir}.zip"
-                    print(f"Zipping {full_save_path} at the root")
-                    shutil.make_archive(save_dir, 'zip', full_save_path)
-                    zip.write(zip_name)
-                    os.remove(zip_name)
-                    latest_world_write_time = os.path.getmtime(full_save_path)
-                    break
-            else:
-                print(f"No directory found in saves for world name: '{world_name}' in saves: '{mc_saves_dir}'", file=stderr)
-                exit(1)
+    private PackagesforRunSubmissionZipper() {}
 
+    /** The worlds and logs that make up a submission, resolved from latest_world.json. */
+    public static final class Layout {
+        private final Path world;
+        private final List<Path> last5;
+        private final List<Path> background;
+        private final List<Path> logs;
+
+        private Layout(Path world, List<Path> last5, List<Path> background, List<Path> logs) {
+            this.world = world;
+            this.last5 = last5;
+            this.background = background;
+            this.logs = logs;
+        }
+
+        public Path getWorld() { return world; }
+        public List<Path> getLast5() { return last5; }
+        public List<Path> getBackground() { return background; }
+        public List<Path> getLogs() { return logs; }
+    }
 
-            def last5_sorter(save):
-                if latest_world_write_time is None:
-                    exit(1)
+    /** Writes LIGNLE-SRC-Submission-<date>-<time>.zip into outDir and returns its path. */
+    public static Path createPackage(Path outDir) throws IOException {
+        if (!Files.isDirectory(outDir)) throw new IOException("Output directory does not exist: " + outDir);
+        boolean staged = SubmissionStager.beginPackaging();
+        try {
+            return writePackage(outDir, resolveLayout(staged));
+        } finally {
+            if (staged) SubmissionStager.endPackaging();
+        }
+    }
 
-                return latest_world_write_time - os.path.getmtime(os.path.join(mc_saves_dir, save))
+    private static Path writePackage(Path outDir, Layout layout) throws IOException {
+
+        Path output = outDir.resolve("LIGNLE-SRC-Submission-" + LocalDateTime.now().format(NAME_FORMAT) + ".zip");
+        Path partial = output.resolveSibling(output.getFileName() + ".part");
+
+        List<String> names = new ArrayList<>();
+        List<Path> worlds = new ArrayList<>();
+        names.add(layout.world.getFileName() + ".zip");
+        worlds.add(layout.world);
+        for (Path save : layout.last5) {
+            names.add("Last5/" + save.getFileName() + ".zip");
+            worlds.add(save);
+        }
+        for (Path save : layout.background) {
+            names.add("Background/" + save.getFileName() + ".zip");
+            worlds.add(save);
+        }
+
+        // Checksums are taken from the bytes as they are written, so the manifest costs no second read
+        JSONArray manifest = new JSONArray();
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(partial))) {
+            // Worlds are compressed concurrently while they fit the budget and written in order as they finish
+            long[] sizes = new long[worlds.size()];
+            for (int i = 0; i < sizes.length; i++) sizes[i] = sizeOnDisk(worlds.get(i));
+            List<ForkJoinTask<PackedWorld>> tasks = new ArrayList<>(Collections.nCopies(worlds.size(), null));
+            int window = pool.getParallelism() + 2;
+            long inFlightBytes = 0;
+            int next = 0;
+            for (int i = 0; i < worlds.size(); i++) {
+                while (next < worlds.size() && next - i < window) {
+                    if (sizes[next] > STREAM_THRESHOLD) {
+                        next++;
+                        continue;
+                    }
+                    if (inFlightBytes > 0 && inFlightBytes + sizes[next] > IN_MEMORY_BUDGET) break;
+                    inFlightBytes += sizes[next];
+                    Path world = worlds.get(next);
+                    tasks.set(next++, pool.submit(() -> packWorld(world)));
+                }
+
+                if (i == 1 + layout.last5.size()) addDirectory(zip, "Background/");
+                ForkJoinTask<PackedWorld> task = tasks.set(i, null);
+                if (task != null) {
+                    PackedWorld packed = join(task);
+                    inFlightBytes -= sizes[i];
+                    LingleLogger.logInfo("Zipped " + worlds.get(i) + " into " + names.get(i) + " (" + packed.size / 1024 + " KiB)");
+                    writeStored(zip, names.get(i), packed);
+                    manifest.put(manifestEntry(names.get(i), packed.size, packed.sha256));
+                } else {
+                    LingleLogger.logInfo("Zipping " + worlds.get(i) + " (" + sizes[i] / (1024 * 1024) + " MiB) straight into " + names.get(i));
+                    Sink written = streamWorld(zip, names.get(i), worlds.get(i));
+                    manifest.put(manifestEntry(names.get(i), written.count, written.sha256()));
+                }
+                if (i == 0) addDirectory(zip, "Last5/");
+            }
+
+            addDirectory(zip, "logs/");
+            for (Path log : layout.logs) {
+                LingleLogger.logInfo("Zipping " + log + " into 'logs' directory");
+                ZipEntry entry = new ZipEntry("logs/" + log.getFileName());
+                entry.setLastModifiedTime(Files.getLastModifiedTime(log));
+                zip.putNextEntry(entry);
+                MessageDigest md = DownloadCache.newDigest();
+                long size;
+                try (InputStream in = new DigestInputStream(Files.newInputStream(log), md)) {
+                    size = in.transferTo(zip);
+                }
+                zip.closeEntry();
+                manifest.put(manifestEntry(entry.getName(), size, HexFormat.of().formatHex(md.digest())));
+            }
+
+            JSONObject json = new JSONObject();
+            json.put("format", MANIFEST_FORMAT);
+            json.put("created", Instant.now().toString());
+            json.put("lingle", Updater.CURRENT_VERSION);
+            json.put("run", names.get(0));
+            json.put("entries", manifest);
+            zip.putNextEntry(new ZipEntry(MANIFEST));
+            zip.write(json.toString(2).getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        } catch (IOException | RuntimeException e) {
+            // RuntimeException covers UncheckedIOException and CancellationException from the pool tasks
+            Files.deleteIfExists(partial);
+            throw e;
+        } finally {
+            pool.shutdownNow();
+        }
+        Files.move(partial, output, StandardCopyOption.ATOMIC_MOVE);
+        LingleLogger.logSuccess("Created " + output + " (" + Files.size(output) / 1024 + " KiB in " +
+                (System.nanoTime() - start) / 1_000_000 + " ms)");
+        return output;
+    }
 
+    /**
+     * Finds the run world from ~/speedrunigt/latest_world.json and the worlds and logs around it.
+     * Last5 are the newest worlds modified before the run, Background every world modified after it.
+     * With useStaging, a staged copy of the run's instance is used in place of its saves directory
+     * when there is one.
+     */
+    public static Layout resolveLayout(boolean useStaging) throws IOException {
+        Path json = Path.of(System.getProperty("user.home"), "speedrunigt", "latest_world.json");
+        if (!Files.exists(json)) throw new IOException("JSON file not found: " + json);
+        String worldPath = new JSONObject(Files.readString(json, StandardCharsets.UTF_8)).optString("world_path", "");
+        if (worldPath.isEmpty()) throw new IOException("No world_path in " + json);
+
+        Path world = Path.of(worldPath);
+        Path staged = useStaging ? SubmissionStager.stagedSavesFor(world) : null;
+        if (staged != null) world = staged.resolve(world.getFileName().toString());
+        Path savesDir = world.getParent();
+        if (savesDir == null || !Files.isDirectory(world)) {
+            throw new IOException("No directory found in saves for world name: '" + world.getFileName() + "' in saves: '" + savesDir + "'");
+        }
+        long runTime = Files.getLastModifiedTime(world).toMillis();
+
+        List<Path> older = new ArrayList<>();
+        List<Path> newer = new ArrayList<>();
+        try (Stream<Path> saves = Files.list(savesDir)) {
+            for (Path save : saves.filter(Files::isDirectory).toList()) {
+                if (save.getFileName().equals(world.getFileName())) continue;
+                long t = Files.getLastModifiedTime(save).toMillis();
+                if (t < runTime) older.add(save);
+                else if (t > runTime) newer.add(save);
+            }
+        }
+        older.sort(Comparator.comparingLong(PackagesforRunSubmissionZipper::modified).reversed());
+        List<Path> last5 = List.copyOf(older.subList(0, Math.min(5, older.size())));
+
+        Path logsDir = savesDir.resolveSibling("logs");
+        List<Path> logs = List.of();
+        if (Files.isDirectory(logsDir)) {
+            try (Stream<Path> files = Files.list(logsDir)) {
+                logs = files.filter(Files::isRegularFile)
+                        .sorted(Comparator.comparingLong(PackagesforRunSubmissionZipper::modified).reversed())
+                        .limit(3)
+                        .toList();
+            }
+        }
+        return new Layout(world, last5, List.copyOf(newer), logs);
+    }
 
-            def logs_sorter(log):
-                return os.path.getmtime(os.path.join(mc_logs_dir, log))
+    // A world's nested archive, built in memory on a pool thread
+    private static final class PackedWorld {
+        final Buffer data;
+        final int size;
+        final long crc;
+        final String sha256;
+        final FileTime modified;
+
+        PackedWorld(Buffer data, int size, long crc, String sha256, FileTime modified) {
+            this.data = data;
+            this.size = size;
+            this.crc = crc;
+            this.sha256 = sha256;
+            this.modified = modified;
+        }
+    }
 
+    // Hands out its array instead of copying it like toByteArray() does
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer(int size) {
+            super(size);
+        }
 
-            def last5_filter(save):
-                if latest_world_write_time is None:
-                    exit(1)
+        void writeTo(ZipOutputStream zip, int len) throws IOException {
+            zip.write(buf, 0, len);
+        }
+    }
 
-                return os.path.getmtime(os.path.join(mc_saves_dir, save)) < latest_world_write_time
+    private static PackedWorld packWorld(Path worldDir) {
+        try {
+            Buffer buffer = new Buffer(1 << 20);
+            Sink sink = new Sink(buffer, true);
+            try (ZipOutputStream zip = new ZipOutputStream(sink)) {
+                zipDirectory(worldDir, zip);
+            }
+            return new PackedWorld(buffer, (int) sink.count, sink.crc.getValue(), sink.sha256(), Files.getLastModifiedTime(worldDir));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
+    /**
+     * Zips a world directly into the package. The size and CRC of the nested archive are not known
+     * up front, so it goes in as a deflated entry at level 0, which copies the bytes in stored blocks.
+     */
+    private static Sink streamWorld(ZipOutputStream zip, String name, Path worldDir) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setLastModifiedTime(Files.getLastModifiedTime(worldDir));
+        zip.setLevel(Deflater.NO_COMPRESSION);
+        zip.putNextEntry(entry);
+        Sink sink = new Sink(zip, false);
+        ZipOutputStream nested = new ZipOutputStream(sink);
+        zipDirectory(worldDir, nested);
+        nested.finish();
+        zip.closeEntry();
+        zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+        return sink;
+    }
 
-            def background_worlds_filter(save):
-                if latest_world_write_time is None:
-                    exit(1)
-
-                return os.path.getmtime(os.path.join(mc_saves_dir, save)) > latest_world_write_time
+    // Counts and hashes what passes through; close() leaves the target open for the next entry
+    private static final class Sink extends FilterOutputStream {
+        final MessageDigest md = DownloadCache.newDigest();
+        final CRC32 crc;
+        long count;
+
+        Sink(OutputStream out, boolean withCrc) {
+            super(out);
+            this.crc = withCrc ? new CRC32() : null;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            md.update((byte) b);
+            if (crc != null) crc.update(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            md.update(b, off, len);
+            if (crc != null) crc.update(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        String sha256() {
+            return HexFormat.of().formatHex(md.digest());
+        }
+    }
 
+    private static long sizeOnDisk(Path dir) throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            return walk.filter(Files::isRegularFile).mapToLong(PackagesforRunSubmissionZipper::fileSize).sum();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
 
-            last_five_worlds = sorted(filter(last5_filter, saves), key=last5_sorter)[:5]
-            zip.mkdir("Last5")
-            for save_dir in last_five_worlds:
-                full_save_path = os.path.join(mc_saves_dir, save_dir)
-                arcname = f"{os.path.join("Last5", save_dir)}.zip"
-                zip_name = f"{save_dir}.zip"
-                print(f"Zipping {full_save_path} into 'Last5' directory")
-                shutil.make_archive(save_dir, 'zip', full_save_path)
-                zip.write(zip_name, arcname)
-                os.remove(zip_name)
+    private static JSONObject manifestEntry(String name, long size, String sha256) {
+        JSONObject entry = new JSONObject();
+        entry.put("name", name);
+        entry.put("size", size);
+        entry.put("sha256", sha256);
+        return entry;
+    }
 
-            background_worlds = list(filter(background_worlds_filter, saves))
-            if len(background_worlds) != 0:
-                zip.mkdir("Background")
-                for save_dir in background_worlds:
-                    full_save_path = os.path.join(mc_saves_dir, save_dir)
-                    arcname = f"{os.path.join("Background", save_dir)}.zip"
-                    zip_name = f"{save_dir}.zip"
-                    print(f"Zipping {full_save_path} into 'Background' directory")
-                    shutil.make_archive(save_dir, 'zip', full_save_path)
-                    zip.write(zip_name, arcname)
-                    os.remove(zip_name)
+    private static PackedWorld join(ForkJoinTask<PackedWorld> task) throws IOException {
+        try {
+            return task.join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
 
+    // Nested archives are already compressed, so they go into the package as-is
+    private static void writeStored(ZipOutputStream zip, String name, PackedWorld packed) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(packed.size);
+        entry.setCompressedSize(packed.size);
+        entry.setCrc(packed.crc);
+        entry.setLastModifiedTime(packed.modified);
+        zip.putNextEntry(entry);
+        packed.data.writeTo(zip, packed.size);
+        zip.closeEntry();
+    }
 
-            mc_logs_dir = os.path.join(mc_dir, "logs")
-            logs = sorted(os.listdir(mc_logs_dir), key=logs_sorter, reverse=True)[:3]
-            zip.mkdir("logs")
-            for log_name in logs:
-                full_log_path = os.path.join(mc_logs_dir, log_name)
-                arcname = os.path.join("logs", log_name)
-                print(f"Zipping {full_log_path} into 'logs' directory")
-                zip.write(full_log_path, arcname)
+    private static void addDirectory(ZipOutputStream zip, String name) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.closeEntry();
+    }
 
-            zip.close()
+    // Region files and other already-compressed data are copied at level 0 (stored blocks) in one
+    // streaming pass; deflating them again gains nothing
+    private static void zipDirectory(Path dir, ZipOutputStream zip) throws IOException {
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            paths = walk.filter(p -> !p.equals(dir)).sorted().toList();
+        }
+        for (Path p : paths) {
+            String name = dir.relativize(p).toString().replace('\\', '/');
+            FileTime modified = Files.getLastModifiedTime(p);
+            if (Files.isDirectory(p)) {
+                ZipEntry entry = new ZipEntry(name + "/");
+                entry.setLastModifiedTime(modified);
+                zip.putNextEntry(entry);
+                zip.closeEntry();
+            } else if (Files.isRegularFile(p)) {
+                ZipEntry entry = new ZipEntry(name);
+                entry.setLastModifiedTime(modified);
+                boolean compressed = isCompressed(name);
+                zip.setLevel(compressed ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+                zip.putNextEntry(entry);
+                try (InputStream in = Files.newInputStream(p)) {
+                    in.transferTo(zip);
+                }
+                zip.closeEntry();
+            }
+        }
+    }
 
-            print("Done")
-            """;
+    private static boolean isCompressed(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        for (String ext : STORED_EXTENSIONS) {
+            if (lower.endsWith(ext)) return true;
+        }
+        return false;
+    }
 
-        Files.writeString(
-                scriptPath,
-                script,
-                StandardCharsets.UTF_8,
-                StandardOpenOption.CREATE,
-                StandardOpenOption.TRUNCATE_EXISTING
-        );
+    private static long fileSize(Path p) {
+        try {
+            return Files.size(p);
+        } catch (NoSuchFileException e) {
+            return 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
+    private static long modified(Path p) {
         try {
-            Set<PosixFilePermission> perms = EnumSet.of(
-                    PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE,
-                    PosixFilePermission.GROUP_READ, PosixFilePermission.GROUP_EXECUTE,
-                    PosixFilePermission.OTHERS_READ, PosixFilePermission.OTHERS_EXECUTE
-            );
-            Files.setPosixFilePermissions(scriptPath, perms);
-        } catch (UnsupportedOperationException ignored) {}
-
-        return scriptPath;
+            return Files.getLastModifiedTime(p).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
     }
 }
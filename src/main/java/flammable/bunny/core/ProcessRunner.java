@@ -0,0 +1,259 @@
+package flammable.bunny.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs an unprivileged external command. stdout and stderr are drained at the same time on their
+ * own threads, so neither pipe can fill up and stall the child, and complete lines are handed to
+ * LingleLogger a read buffer at a time under the caller's subsystem. A timeout, a cancel condition
+ * or an interrupt of the calling thread kills the whole process tree. Every run is timed; the
+ * totals per program are available from {@link #metricsSummary()}.
+ *
+ *   ProcessRunner.Result r = ProcessRunner.of("git", "clone", url, dir).directory(home).run();
+ *
+ * Elevated commands still go through ElevatedInstaller's root shell.
+ */
+public final class ProcessRunner {
+
+    public static final class Result {
+        private final int exitCode;
+        private final String stdout;
+        private final String stderr;
+        private final long durationMillis;
+        private final boolean timedOut;
+        private final boolean cancelled;
+
+        private Result(int exitCode, String stdout, String stderr, long durationMillis, boolean timedOut, boolean cancelled) {
+            this.exitCode = exitCode;
+            this.stdout = stdout;
+            this.stderr = stderr;
+            this.durationMillis = durationMillis;
+            this.timedOut = timedOut;
+            this.cancelled = cancelled;
+        }
+
+        /** Exit status, or -1 when the process was killed for a timeout or cancel. */
+        public int getExitCode() { return exitCode; }
+        /** Captured stdout; empty unless {@link #capture()} was set. */
+        public String getStdout() { return stdout; }
+        /** Captured stderr; empty unless {@link #capture()} was set. */
+        public String getStderr() { return stderr; }
+        public long getDurationMillis() { return durationMillis; }
+        public boolean isTimedOut() { return timedOut; }
+        public boolean isCancelled() { return cancelled; }
+        public boolean isSuccess() { return exitCode == 0 && !timedOut && !cancelled; }
+    }
+
+    private static final long POLL_MS = 250;
+    private static final long TERMINATE_GRACE_MS = 2000;
+
+    private static final AtomicInteger THREAD_IDS = new AtomicInteger();
+    private static final ExecutorService DRAINS = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "lingle-process-io-" + THREAD_IDS.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    // program -> {runs, failures, total ms, max ms}
+    private static final Map<String, long[]> METRICS = new ConcurrentHashMap<>();
+
+    private final List<String> command;
+    private Path directory;
+    private Duration timeout;
+    private BooleanSupplier cancelled = () -> false;
+    private boolean capture;
+    private boolean quiet;
+    private final Map<String, String> environment = new TreeMap<>();
+
+    private ProcessRunner(List<String> command) {
+        this.command = command;
+    }
+
+    public static ProcessRunner of(String... command) {
+        return new ProcessRunner(List.of(command));
+    }
+
+    public static ProcessRunner of(List<String> command) {
+        return new ProcessRunner(List.copyOf(command));
+    }
+
+    public ProcessRunner directory(Path directory) {
+        this.directory = directory;
+        return this;
+    }
+
+    /** Kills the process tree if it is still running after this long. */
+    public ProcessRunner timeout(Duration timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    /** Polled while waiting; once it returns true the process tree is killed. */
+    public ProcessRunner cancelWhen(BooleanSupplier cancelled) {
+        this.cancelled = cancelled;
+        return this;
+    }
+
+    /** Keeps stdout and stderr in the result. */
+    public ProcessRunner capture() {
+        this.capture = true;
+        return this;
+    }
+
+    /** Does not log the command or its output, for queries whose output is parsed instead. */
+    public ProcessRunner quiet() {
+        this.quiet = true;
+        return this;
+    }
+
+    public ProcessRunner env(String name, String value) {
+        environment.put(name, value);
+        return this;
+    }
+
+    public Result run() throws IOException, InterruptedException {
+        String program = Path.of(command.get(0)).getFileName().toString();
+        if (!quiet) LingleLogger.logCommand(String.join(" ", command));
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        if (directory != null) pb.directory(directory.toFile());
+        pb.environment().putAll(environment);
+
+        long start = System.nanoTime();
+        Process proc = pb.start();
+        proc.getOutputStream().close();
+
+        // The drain threads log under the caller's subsystem
+        String subsystem = LingleLogger.getSubsystem();
+        Future<String> out = DRAINS.submit(() -> drain(proc.getInputStream(), subsystem));
+        Future<String> err = DRAINS.submit(() -> drain(proc.getErrorStream(), subsystem));
+
+        boolean timedOut = false;
+        boolean wasCancelled = false;
+        long deadline = timeout != null ? start + timeout.toNanos() : Long.MAX_VALUE;
+        try {
+            while (!proc.waitFor(POLL_MS, TimeUnit.MILLISECONDS)) {
+                if (cancelled.getAsBoolean()) {
+                    wasCancelled = true;
+                    break;
+                }
+                if (System.nanoTime() > deadline) {
+                    timedOut = true;
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            destroyTree(proc);
+            record(program, start, false);
+            throw e;
+        }
+        if (timedOut || wasCancelled) destroyTree(proc);
+
+        String stdout = await(out);
+        String stderr = await(err);
+        int exitCode = timedOut || wasCancelled ? -1 : proc.exitValue();
+        long millis = record(program, start, exitCode == 0);
+
+        if (timedOut) {
+            LingleLogger.logWarn(program + " timed out after " + timeout.toSeconds() + " s and was killed");
+        } else if (wasCancelled) {
+            LingleLogger.logWarn(program + " was cancelled");
+        } else if (!quiet) {
+            LingleLogger.logInfo(program + " exited with code " + exitCode + " in " + millis + " ms");
+        }
+        return new Result(exitCode, stdout, stderr, millis, timedOut, wasCancelled);
+    }
+
+    /** One line per program run so far: runs, failures, total and slowest duration. */
+    public static List<String> metricsSummary() {
+        List<String> lines = new ArrayList<>();
+        new TreeMap<>(METRICS).forEach((program, m) -> {
+            synchronized (m) {
+                lines.add(String.format("%s: %d runs, %d failed, %.1f s total, %.1f s max",
+                        program, m[0], m[1], m[2] / 1000.0, m[3] / 1000.0));
+            }
+        });
+        return lines;
+    }
+
+    // Reads a buffer at a time and logs whatever complete lines it holds in one call
+    private String drain(InputStream stream, String subsystem) throws IOException {
+        LingleLogger.setSubsystem(subsystem);
+        StringBuilder captured = new StringBuilder();
+        StringBuilder pending = new StringBuilder();
+        char[] buf = new char[8192];
+        try (Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+            int n;
+            while ((n = reader.read(buf)) != -1) {
+                if (capture) captured.append(buf, 0, n);
+                if (quiet) continue;
+                pending.append(buf, 0, n);
+                int lastNewline = pending.lastIndexOf("\n");
+                if (lastNewline >= 0) {
+                    LingleLogger.logOutput(pending.substring(0, lastNewline));
+                    pending.delete(0, lastNewline + 1);
+                }
+            }
+        } catch (IOException e) {
+            // The stream is closed under us when the process tree is killed
+        }
+        if (pending.length() > 0) LingleLogger.logOutput(pending.toString());
+        return captured.toString();
+    }
+
+    private static String await(Future<String> drain) throws InterruptedException {
+        try {
+            // Bounded: a grandchild that escaped the kill could still hold the pipe open
+            return drain.get(TERMINATE_GRACE_MS * 2, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            drain.cancel(true);
+            return "";
+        }
+    }
+
+    private static void destroyTree(Process proc) {
+        List<ProcessHandle> descendants = proc.descendants().toList();
+        descendants.forEach(ProcessHandle::destroy);
+        proc.destroy();
+        try {
+            if (!proc.waitFor(TERMINATE_GRACE_MS, TimeUnit.MILLISECONDS)) {
+                proc.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            proc.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+        descendants.stream().filter(ProcessHandle::isAlive).forEach(ProcessHandle::destroyForcibly);
+    }
+
+    private static long record(String program, long start, boolean success) {
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        long[] m = METRICS.computeIfAbsent(program, k -> new long[4]);
+        synchronized (m) {
+            m[0]++;
+            if (!success) m[1]++;
+            m[2] += millis;
+            m[3] = Math.max(m[3], millis);
+        }
+        return millis;
+    }
+}
@@ -0,0 +1,276 @@
+package flammable.bunny.core;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs SetupTasks as soon as their dependencies are done. Package-manager tasks are serialized on
+ * elevated channel 0 because every package manager holds a global lock; builds and small system
+ * changes run next to them on the other channels. Downloads need no root shell, so they take no
+ * channel and are capped separately. Progress is the weight-averaged completion
+ * of all tasks, including the partial progress of the ones still running. A task that names an
+ * unknown dependency, or is caught in a dependency cycle, fails with an error instead of waiting.
+ * A task that throws SetupTask.PartialFailure is done, with errors reported against the items it names.
+ */
+public final class SetupScheduler {
+
+    public interface Listener {
+        void onProgress(double fraction, String message);
+    }
+
+    public static final class Outcome {
+        private final List<String> succeeded = new ArrayList<>();
+        private final List<String> errors = new ArrayList<>();
+        private final List<String> skipped = new ArrayList<>();
+        private boolean cancelled;
+
+        public List<String> getSucceeded() { return succeeded; }
+        public List<String> getErrors() { return errors; }
+        public List<String> getSkipped() { return skipped; }
+        public boolean isCancelled() { return cancelled; }
+    }
+
+    private enum State { PENDING, RUNNING, DONE, FAILED, SKIPPED }
+
+    // Root channels and download slots are admitted separately; the pool has a thread for each
+    private static final int MAX_NETWORK = 3;
+    private static final int POOL_SIZE = ElevatedInstaller.CHANNELS + MAX_NETWORK;
+    private static final int NO_CHANNEL = -1;
+
+    private final Map<String, SetupTask> tasks = new LinkedHashMap<>();
+    private final BooleanSupplier cancelled;
+
+    public SetupScheduler(BooleanSupplier cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    public SetupScheduler add(SetupTask task) {
+        if (tasks.putIfAbsent(task.getId(), task) != null) {
+            throw new IllegalArgumentException("Duplicate setup task: " + task.getId());
+        }
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return tasks.isEmpty();
+    }
+
+    public boolean contains(String id) {
+        return tasks.containsKey(id);
+    }
+
+    public Outcome run(Listener listener) throws InterruptedException {
+        Outcome outcome = new Outcome();
+        Map<String, State> state = new HashMap<>();
+        for (String id : tasks.keySet()) state.put(id, State.PENDING);
+
+        int totalWeight = 0;
+        for (SetupTask t : tasks.values()) totalWeight += t.getWeight();
+        final double total = Math.max(1, totalWeight);
+
+        Map<String, Double> fractions = new ConcurrentHashMap<>();
+        Map<String, String> messages = new ConcurrentHashMap<>();
+        Runnable publish = () -> {
+            double done = 0;
+            for (SetupTask t : tasks.values()) done += fractions.getOrDefault(t.getId(), 0.0) * t.getWeight();
+            listener.onProgress(done / total, String.join(" | ", new TreeMap<>(messages).values()));
+        };
+
+        ExecutorService pool = Executors.newFixedThreadPool(POOL_SIZE, new ThreadFactory() {
+            private int n = 0;
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "lingle-setup-" + (++n));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        CompletionService<String> completions = new ExecutorCompletionService<>(pool);
+        Map<String, Future<String>> running = new HashMap<>();
+        Map<String, Exception> failures = new ConcurrentHashMap<>();
+        boolean[] channelBusy = new boolean[ElevatedInstaller.CHANNELS];
+        Map<String, Integer> channelOf = new HashMap<>();
+        int networkRunning = 0;
+
+        // A dependency that is not part of the run is a planning bug; fail the task instead of guessing
+        for (SetupTask t : tasks.values()) {
+            List<String> unknown = new ArrayList<>();
+            for (String dep : t.getDependsOn()) if (!tasks.containsKey(dep)) unknown.add(dep);
+            for (String dep : t.getOrderedAfter()) if (!tasks.containsKey(dep)) unknown.add(dep);
+            if (!unknown.isEmpty()) {
+                LingleLogger.logError(t.getLabel() + " depends on unknown setup task " + String.join(", ", unknown));
+                fail(t, "depends on unknown setup task " + String.join(", ", unknown), state, fractions, outcome);
+            }
+        }
+
+        try {
+            while (true) {
+                if (cancelled.getAsBoolean()) {
+                    outcome.cancelled = true;
+                    for (Future<String> f : running.values()) f.cancel(true);
+                    break;
+                }
+
+                // Start everything that is ready, in declaration order
+                boolean progressed = true;
+                while (progressed) {
+                    progressed = false;
+                    for (SetupTask t : tasks.values()) {
+                        if (state.get(t.getId()) != State.PENDING) continue;
+
+                        String blocker = null;
+                        boolean waiting = false;
+                        for (String dep : t.getDependsOn()) {
+                            State ds = state.get(dep);
+                            if (ds == State.DONE) continue;
+                            if (ds == State.FAILED || ds == State.SKIPPED) blocker = dep;
+                            else waiting = true;
+                        }
+                        for (String dep : t.getOrderedAfter()) {
+                            State ds = state.get(dep);
+                            if (ds == State.PENDING || ds == State.RUNNING) waiting = true;
+                        }
+                        if (blocker != null) {
+                            state.put(t.getId(), State.SKIPPED);
+                            fractions.put(t.getId(), 1.0);
+                            outcome.skipped.add(t.getId());
+                            LingleLogger.logInfo("Skipping " + t.getLabel() + " because " + tasks.get(blocker).getLabel() + " did not complete");
+                            progressed = true;
+                            continue;
+                        }
+                        if (waiting) continue;
+
+                        int channel;
+                        if (t.getKind() == SetupTask.Kind.NETWORK) {
+                            if (networkRunning >= MAX_NETWORK) continue;
+                            channel = NO_CHANNEL;
+                            networkRunning++;
+                        } else {
+                            channel = pickChannel(t.getKind(), channelBusy);
+                            if (channel < 0) continue;
+                            channelBusy[channel] = true;
+                        }
+                        channelOf.put(t.getId(), channel);
+                        state.put(t.getId(), State.RUNNING);
+                        running.put(t.getId(), completions.submit(() -> execute(t, channel, fractions, messages, publish, failures), t.getId()));
+                        progressed = true;
+                    }
+                }
+                publish.run();
+
+                if (running.isEmpty()) {
+                    // Nothing runs and nothing could start: whatever is still pending waits on a cycle
+                    List<String> stuck = new ArrayList<>();
+                    for (SetupTask t : tasks.values()) {
+                        if (state.get(t.getId()) == State.PENDING) stuck.add(t.getId());
+                    }
+                    if (stuck.isEmpty() || outcome.cancelled) break;
+                    // Fail the tasks on the cycle; the ones merely waiting on them are skipped as usual
+                    List<String> cycle = new ArrayList<>();
+                    for (String id : stuck) {
+                        if (reaches(id, id, new HashSet<>(), state)) cycle.add(id);
+                    }
+                    LingleLogger.logError("Setup tasks wait on each other and can never start: " + String.join(", ", cycle));
+                    for (String id : cycle) {
+                        fail(tasks.get(id), "dependency cycle among " + String.join(", ", cycle), state, fractions, outcome);
+                    }
+                    continue;
+                }
+
+                // Wait for one task to finish, re-checking cancellation now and then
+                Future<String> finished = completions.poll(250, TimeUnit.MILLISECONDS);
+                if (finished == null) continue;
+                String id = running.entrySet().stream()
+                        .filter(e -> e.getValue() == finished).map(Map.Entry::getKey).findFirst().orElseThrow();
+                running.remove(id);
+                int channel = channelOf.remove(id);
+                if (channel == NO_CHANNEL) networkRunning--;
+                else channelBusy[channel] = false;
+                fractions.put(id, 1.0);
+                messages.remove(id);
+
+                SetupTask t = tasks.get(id);
+                Exception failure = failures.get(id);
+                if (failure == null) {
+                    state.put(id, State.DONE);
+                    outcome.succeeded.addAll(t.getSuccessNames());
+                } else if (failure instanceof SetupTask.PartialFailure partial) {
+                    state.put(id, State.DONE);
+                    for (String name : t.getSuccessNames()) {
+                        if (!partial.getFailed().containsKey(name)) outcome.succeeded.add(name);
+                    }
+                    partial.getFailed().forEach((name, msg) -> outcome.errors.add(t.getErrorCode() != 0
+                            ? String.format("[Error %d] %s: %s", t.getErrorCode(), name, msg)
+                            : name + ": " + msg));
+                } else {
+                    String msg = failure.getMessage() != null ? failure.getMessage() : failure.getClass().getSimpleName();
+                    fail(t, msg, state, fractions, outcome);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return outcome;
+    }
+
+    // Whether target can be reached from id by following dependencies between pending tasks
+    private boolean reaches(String id, String target, Set<String> visited, Map<String, State> state) {
+        SetupTask t = tasks.get(id);
+        List<String> deps = new ArrayList<>(t.getDependsOn());
+        deps.addAll(t.getOrderedAfter());
+        for (String dep : deps) {
+            if (dep.equals(target)) return true;
+            if (state.get(dep) == State.PENDING && visited.add(dep) && reaches(dep, target, visited, state)) return true;
+        }
+        return false;
+    }
+
+    private static void fail(SetupTask t, String msg, Map<String, State> state, Map<String, Double> fractions, Outcome outcome) {
+        state.put(t.getId(), State.FAILED);
+        fractions.put(t.getId(), 1.0);
+        outcome.errors.add(t.getErrorCode() != 0
+                ? String.format("[Error %d] %s: %s", t.getErrorCode(), t.getErrorLabel(), msg)
+                : t.getErrorLabel() + ": " + msg);
+    }
+
+    // Package-manager work always goes to channel 0 so transactions queue instead of fighting over the lock;
+    // builds and system changes share the rest
+    private static int pickChannel(SetupTask.Kind kind, boolean[] busy) {
+        if (kind == SetupTask.Kind.PACKAGES) return busy[0] ? -1 : 0;
+        for (int c = 1; c < busy.length; c++) {
+            if (!busy[c]) return c;
+        }
+        return -1;
+    }
+
+    private static String execute(SetupTask t, int channel, Map<String, Double> fractions, Map<String, String> messages,
+                                  Runnable publish, Map<String, Exception> failures) {
+        String prevSubsystem = LingleLogger.setSubsystem("install");
+        // A download that does call into the root shell stays on the thread's default channel 0
+        int prevChannel = channel != NO_CHANNEL ? ElevatedInstaller.setChannel(channel) : -1;
+        String key = t.getId();
+        messages.put(key, t.getLabel());
+        fractions.put(key, 0.0);
+        publish.run();
+        long start = System.nanoTime();
+        try {
+            LingleLogger.logInfo(t.getLabel() + "...");
+            t.run((fraction, message) -> {
+                fractions.put(key, Math.max(0, Math.min(1, fraction)));
+                if (message != null) messages.put(key, message);
+                publish.run();
+            });
+            LingleLogger.logSuccess(t.getLabel() + " done in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            if (e instanceof SetupTask.PartialFailure) LingleLogger.logWarn(t.getLabel() + " finished with errors. " + e.getMessage());
+            else LingleLogger.logError(t.getLabel() + " failed", e);
+            failures.put(key, e);
+        } finally {
+            if (channel != NO_CHANNEL) ElevatedInstaller.setChannel(prevChannel);
+            LingleLogger.setSubsystem(prevSubsystem);
+        }
+        return key;
+    }
+}
@@ -0,0 +1,113 @@
+package flammable.bunny.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One step of a setup run. Tasks name the tasks they depend on and declare what kind of work they
+ * do, which is what lets SetupScheduler overlap downloads and builds with package transactions.
+ */
+public final class SetupTask {
+
+    public enum Kind {
+        /** Talks to the system package manager; only one of these runs at a time. */
+        PACKAGES,
+        /** Mostly waiting on the network. */
+        NETWORK,
+        /** Local compile or container work. */
+        BUILD,
+        /** Small privileged changes that do not touch the package database. */
+        SYSTEM
+    }
+
+    public interface Progress {
+        /** Reports how far the task is, from 0 to 1, and what it is doing right now. */
+        void update(double fraction, String message);
+    }
+
+    public interface Body {
+        void run(Progress progress) throws Exception;
+    }
+
+    /**
+     * Thrown by a task that did part of its work: the task counts as done, so tasks after it still
+     * run, but the listed items are reported as errors and not as installed.
+     */
+    public static final class PartialFailure extends Exception {
+        private final Map<String, String> failed;
+
+        /** @param failed error message per item, keyed by the name it would be reported as */
+        public PartialFailure(Map<String, String> failed) {
+            super("Failed: " + String.join(", ", failed.keySet()));
+            this.failed = new LinkedHashMap<>(failed);
+        }
+
+        public Map<String, String> getFailed() { return failed; }
+    }
+
+    private final String id;
+    private final String label;
+    private final Kind kind;
+    private final int weight;
+    private final Body body;
+    private final List<String> dependsOn = new ArrayList<>();
+    private final List<String> orderedAfter = new ArrayList<>();
+    private final List<String> successNames = new ArrayList<>();
+    private int errorCode;
+    private String errorLabel;
+
+    /**
+     * @param id     unique name other tasks refer to in after()
+     * @param label  progress text shown while the task runs
+     * @param weight relative share of the overall progress bar
+     */
+    public SetupTask(String id, String label, Kind kind, int weight, Body body) {
+        this.id = id;
+        this.label = label;
+        this.kind = kind;
+        this.weight = Math.max(1, weight);
+        this.body = body;
+        this.errorLabel = label;
+    }
+
+    /** Runs only after the given tasks succeeded. Every id must be part of the run, or this task fails. */
+    public SetupTask after(String... ids) {
+        dependsOn.addAll(List.of(ids));
+        return this;
+    }
+
+    /** Runs after the given tasks finished, whether they succeeded or not; for ordering only. */
+    public SetupTask afterAttempt(String... ids) {
+        orderedAfter.addAll(List.of(ids));
+        return this;
+    }
+
+    /** Items reported as installed when this task succeeds. */
+    public SetupTask reportsSuccessAs(String... names) {
+        successNames.addAll(List.of(names));
+        return this;
+    }
+
+    /** Error code and prefix used when this task fails, e.g. [Error 6001] ModCheck: ... */
+    public SetupTask onError(int code, String label) {
+        this.errorCode = code;
+        this.errorLabel = label;
+        return this;
+    }
+
+    public String getId() { return id; }
+    public String getLabel() { return label; }
+    public Kind getKind() { return kind; }
+    public int getWeight() { return weight; }
+    public List<String> getDependsOn() { return dependsOn; }
+    public List<String> getOrderedAfter() { return orderedAfter; }
+    public List<String> getSuccessNames() { return successNames; }
+    public int getErrorCode() { return errorCode; }
+    public String getErrorLabel() { return errorLabel; }
+
+    void run(Progress progress) throws Exception {
+        body.run(progress);
+    }
+}
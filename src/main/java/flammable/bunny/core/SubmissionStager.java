@@ -0,0 +1,411 @@
+package flammable.bunny.core;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the worlds a speedrun.com submission needs out of ADW's reach. While ADW runs, the instance
+ * SpeedRunIGT last recorded a world for is mirrored into ~/Lingle/.lingle-staging/<n>:
+ *
+ *   saves/<world>   the run world, the five worlds before it and every background world after it
+ *   logs/<file>     the three newest game logs
+ *
+ * World files are hardlinked (they share the tmpfs with the instance, so this costs no memory until
+ * ADW deletes the originals) and each staged world keeps its source's modification time, so the
+ * staging area reads exactly like a saves directory. It is refreshed when latest_world.json or an
+ * instance directory changes, and every few seconds for writes inside worlds; packaging then only
+ * needs a final refresh, after which the staging area is held still until the package is written.
+ * The staging area is only trusted while the stager runs and is removed when it stops.
+ */
+public final class SubmissionStager {
+
+    private static final Path HOME = Path.of(System.getProperty("user.home"));
+    private static final Path LINGLE_DIR = HOME.resolve("Lingle");
+    private static final Path STAGING_DIR = LINGLE_DIR.resolve(".lingle-staging");
+    private static final Path LATEST_WORLD = HOME.resolve("speedrunigt").resolve("latest_world.json");
+
+    // Worlds are created in bursts; wait for the burst to settle before syncing
+    private static final long DEBOUNCE_MS = 1500;
+    private static final long RESYNC_SECONDS = 15;
+    // A client that dies while packaging cannot release its hold, so holds over the socket expire
+    private static final long REMOTE_HOLD_MS = 30 * 60 * 1000;
+
+    // start() and stop() never wait for a sync in progress, so they have a lock of their own
+    private static final Object LIFECYCLE_LOCK = new Object();
+    private static final Object SYNC_LOCK = new Object();
+
+    private static volatile Thread watcher;
+    private static WatchService watchService;
+
+    // Guarded by SYNC_LOCK: packages being written from the staging area, here and over the socket
+    private static int holds;
+    private static int remoteHolds;
+    private static long remoteHoldUntil;
+    private static boolean discardWhenReleased;
+
+    private SubmissionStager() {}
+
+    public static void start() {
+        synchronized (LIFECYCLE_LOCK) {
+            if (watcher != null) return;
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+            } catch (IOException e) {
+                LingleLogger.logWarn("Submission staging unavailable: " + e.getMessage());
+                return;
+            }
+            WatchService ws = watchService;
+            Thread t = new Thread(() -> watchLoop(ws), "lingle-submission-stager");
+            t.setDaemon(true);
+            watcher = t;
+            t.start();
+            LingleLogger.logInfo("Submission staging started in " + STAGING_DIR);
+        }
+    }
+
+    /** Stops the watcher; it removes the staging area on its way out unless a package is being written. */
+    public static void stop() {
+        synchronized (LIFECYCLE_LOCK) {
+            Thread t = watcher;
+            if (t == null) return;
+            // Cleared first: the watcher checks it on its way out to decide whether to clean up
+            watcher = null;
+            t.interrupt();
+            try {
+                watchService.close();
+            } catch (IOException ignored) {}
+            watchService = null;
+        }
+    }
+
+    public static boolean isRunning() {
+        return watcher != null;
+    }
+
+    /**
+     * Brings the staging area up to date and holds it still until endPackaging(), so no staged world
+     * is replaced or deleted while it is being zipped. Only the instance lock owner runs the stager;
+     * any other Lingle process asks it over the control socket. Returns whether the staging area
+     * may be read; when it is false the package is built from the saves directories.
+     */
+    public static boolean beginPackaging() {
+        try {
+            if (isRunning()) return hold(false);
+            if (!InstanceLock.isOwner()) return LingleControlClient.send("STAGE").equals("OK staged");
+        } catch (IOException e) {
+            LingleLogger.logWarn("Could not refresh submission staging: " + e.getMessage());
+        }
+        return false;
+    }
+
+    /** Ends what a successful beginPackaging() started. */
+    public static void endPackaging() {
+        synchronized (SYNC_LOCK) {
+            if (holds > 0) {
+                release(false);
+                return;
+            }
+        }
+        if (!InstanceLock.isOwner()) {
+            try {
+                LingleControlClient.send("STAGE DONE");
+            } catch (IOException e) {
+                LingleLogger.logWarn("Could not release submission staging: " + e.getMessage());
+            }
+        }
+    }
+
+    /** The control socket side of beginPackaging() and endPackaging() for other Lingle processes. */
+    static String handleCommand(String arg) throws IOException {
+        if (arg.equals("DONE")) {
+            release(true);
+            return "OK released";
+        }
+        return hold(true) ? "OK staged" : "OK not staging";
+    }
+
+    // The first hold does the final sync; later ones share the staging area as it is
+    private static boolean hold(boolean remote) throws IOException {
+        synchronized (SYNC_LOCK) {
+            if (!isRunning()) return false;
+            if (!isHeld()) syncLocked();
+            if (remote) {
+                remoteHolds++;
+                remoteHoldUntil = System.currentTimeMillis() + REMOTE_HOLD_MS;
+            } else {
+                holds++;
+            }
+            return true;
+        }
+    }
+
+    private static void release(boolean remote) {
+        synchronized (SYNC_LOCK) {
+            if (remote) remoteHolds = Math.max(0, remoteHolds - 1);
+            else holds = Math.max(0, holds - 1);
+            if (!isHeld() && discardWhenReleased) discardLocked();
+        }
+    }
+
+    private static boolean isHeld() {
+        if (remoteHolds > 0 && System.currentTimeMillis() > remoteHoldUntil) {
+            LingleLogger.logWarn("Submission staging hold from another Lingle process expired");
+            remoteHolds = 0;
+        }
+        return holds > 0 || remoteHolds > 0;
+    }
+
+    /** The staged saves directory holding this world, or null when it has not been staged. */
+    public static Path stagedSavesFor(Path world) {
+        int instance = instanceOf(world);
+        if (instance < 0) return null;
+        Path saves = STAGING_DIR.resolve(String.valueOf(instance)).resolve("saves");
+        return Files.isDirectory(saves.resolve(world.getFileName().toString())) ? saves : null;
+    }
+
+    // Mirrors the active instance's submission worlds and logs, unless a package is being written
+    private static void sync() throws IOException {
+        synchronized (SYNC_LOCK) {
+            if (!isHeld()) syncLocked();
+        }
+    }
+
+    private static void syncLocked() throws IOException {
+        Path world = latestWorld();
+        if (world == null) return;
+        int instance = instanceOf(world);
+        if (instance < 0) return;
+
+        Path source = LINGLE_DIR.resolve(String.valueOf(instance));
+        Path staged = STAGING_DIR.resolve(String.valueOf(instance)).resolve("saves");
+        Files.createDirectories(staged);
+        String run = world.getFileName().toString();
+
+        // A world ADW already deleted is still a candidate through its staged copy
+        Map<String, Long> modified = new HashMap<>();
+        collectWorlds(staged, modified);
+        collectWorlds(source, modified);
+        Long runTime = modified.get(run);
+        if (runTime == null) return;
+
+        List<String> older = new ArrayList<>();
+        Set<String> keep = new HashSet<>();
+        keep.add(run);
+        for (Map.Entry<String, Long> e : modified.entrySet()) {
+            if (e.getValue() > runTime) keep.add(e.getKey());
+            else if (e.getValue() < runTime) older.add(e.getKey());
+        }
+        older.sort(Comparator.comparing((String name) -> modified.get(name)).reversed());
+        keep.addAll(older.subList(0, Math.min(5, older.size())));
+
+        int linked = 0;
+        for (String name : keep) {
+            Path src = source.resolve(name);
+            if (Files.isDirectory(src, LinkOption.NOFOLLOW_LINKS)) {
+                linked += mirror(src, staged.resolve(name));
+            }
+        }
+        try (Stream<Path> stagedWorlds = Files.list(staged)) {
+            for (Path p : stagedWorlds.toList()) {
+                if (!keep.contains(p.getFileName().toString())) deleteRecursively(p);
+            }
+        }
+        stageLogs(world, staged.resolveSibling("logs"));
+        if (linked > 0) {
+            LingleLogger.logInfo("Staged " + keep.size() + " worlds for instance " + instance + " (" + linked + " files updated)");
+        }
+    }
+
+    private static void watchLoop(WatchService ws) {
+        LingleLogger.setSubsystem("stager");
+        Set<Path> registered = new HashSet<>();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                registerDirectories(ws, registered);
+                try {
+                    sync();
+                } catch (IOException e) {
+                    LingleLogger.logWarn("Submission staging failed: " + e.getMessage());
+                }
+
+                WatchKey key = ws.poll(RESYNC_SECONDS, TimeUnit.SECONDS);
+                if (key != null) {
+                    Thread.sleep(DEBOUNCE_MS);
+                    do {
+                        key.pollEvents();
+                        key.reset();
+                    } while ((key = ws.poll()) != null);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stop()
+        }
+        synchronized (SYNC_LOCK) {
+            if (isHeld()) discardWhenReleased = true;
+            else discardLocked();
+        }
+    }
+
+    // Nothing staged is trusted once the stager is off; a stager started since keeps it
+    private static void discardLocked() {
+        discardWhenReleased = false;
+        if (isRunning() || !Files.exists(STAGING_DIR)) return;
+        try {
+            deleteRecursively(STAGING_DIR);
+            LingleLogger.logInfo("Submission staging stopped, removed " + STAGING_DIR);
+        } catch (IOException e) {
+            LingleLogger.logWarn("Could not remove " + STAGING_DIR + ": " + e.getMessage());
+        }
+    }
+
+    private static void registerDirectories(WatchService ws, Set<Path> registered) {
+        List<Path> dirs = new ArrayList<>();
+        dirs.add(LATEST_WORLD.getParent());
+        for (int i = 1; i <= Math.max(1, LingleState.instanceCount); i++) {
+            dirs.add(LINGLE_DIR.resolve(String.valueOf(i)));
+        }
+        for (Path dir : dirs) {
+            if (registered.contains(dir) || !Files.isDirectory(dir)) continue;
+            try {
+                dir.register(ws, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                registered.add(dir);
+            } catch (IOException e) {
+                LingleLogger.logWarn("Cannot watch " + dir + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static Path latestWorld() {
+        try {
+            if (!Files.exists(LATEST_WORLD)) return null;
+            String path = new JSONObject(Files.readString(LATEST_WORLD, StandardCharsets.UTF_8)).optString("world_path", "");
+            return path.isEmpty() ? null : Path.of(path);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // Instance saves are symlinked to ~/Lingle/<n>; -1 for worlds that live anywhere else
+    private static int instanceOf(Path world) {
+        Path saves = world.getParent();
+        if (saves == null) return -1;
+        try {
+            Path real = saves.toRealPath();
+            Path lingle = LINGLE_DIR.toRealPath();
+            if (real.getParent() != null && real.getParent().equals(lingle)) {
+                return Integer.parseInt(real.getFileName().toString());
+            }
+        } catch (IOException | NumberFormatException ignored) {}
+        return -1;
+    }
+
+    // Practice maps are symlinks into Lingle's own saves and are never deleted, so they are skipped
+    private static void collectWorlds(Path dir, Map<String, Long> modified) throws IOException {
+        if (!Files.isDirectory(dir)) return;
+        try (Stream<Path> worlds = Files.list(dir)) {
+            for (Path w : worlds.toList()) {
+                if (!Files.isDirectory(w, LinkOption.NOFOLLOW_LINKS)) continue;
+                try {
+                    modified.put(w.getFileName().toString(), Files.getLastModifiedTime(w).toMillis());
+                } catch (NoSuchFileException ignored) {}
+            }
+        }
+    }
+
+    // Returns how many files had to be linked or copied; worlds change under us, so vanished files are skipped
+    private static int mirror(Path src, Path dst) throws IOException {
+        int changed = 0;
+        Set<Path> seen = new HashSet<>();
+        List<Path> entries;
+        try (Stream<Path> walk = Files.walk(src)) {
+            entries = walk.toList();
+        } catch (UncheckedIOException | NoSuchFileException e) {
+            return 0;
+        }
+        for (Path p : entries) {
+            Path rel = src.relativize(p);
+            Path target = dst.resolve(rel.toString());
+            seen.add(rel);
+            try {
+                if (Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)) {
+                    Files.createDirectories(target);
+                } else if (Files.isRegularFile(p, LinkOption.NOFOLLOW_LINKS)) {
+                    if (Files.exists(target) && Files.isSameFile(p, target)) continue;
+                    Files.deleteIfExists(target);
+                    try {
+                        Files.createLink(target, p);
+                    } catch (IOException | UnsupportedOperationException e) {
+                        Files.copy(p, target, StandardCopyOption.COPY_ATTRIBUTES);
+                    }
+                    changed++;
+                }
+            } catch (NoSuchFileException ignored) {}
+        }
+
+        // Drop what the world no longer has, while it still exists to compare against
+        if (Files.isDirectory(src)) {
+            try (Stream<Path> walk = Files.walk(dst)) {
+                for (Path p : walk.sorted(Comparator.reverseOrder()).toList()) {
+                    if (!seen.contains(dst.relativize(p))) Files.deleteIfExists(p);
+                }
+            }
+        }
+        try {
+            Files.setLastModifiedTime(dst, Files.getLastModifiedTime(src));
+        } catch (NoSuchFileException ignored) {}
+        return changed;
+    }
+
+    private static void stageLogs(Path world, Path stagedLogs) throws IOException {
+        Path saves = world.getParent();
+        Path logsDir = saves.resolveSibling("logs");
+        if (!Files.isDirectory(logsDir)) return;
+        Files.createDirectories(stagedLogs);
+
+        List<Path> newest;
+        try (Stream<Path> logs = Files.list(logsDir)) {
+            newest = logs.filter(Files::isRegularFile)
+                    .sorted(Comparator.comparing(SubmissionStager::modifiedTime).reversed())
+                    .limit(3)
+                    .toList();
+        }
+        Set<String> names = new HashSet<>();
+        for (Path log : newest) {
+            Path target = stagedLogs.resolve(log.getFileName().toString());
+            names.add(log.getFileName().toString());
+            if (Files.exists(target) && Files.size(target) == Files.size(log)
+                    && modifiedTime(target).equals(modifiedTime(log))) continue;
+            Files.copy(log, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+        try (Stream<Path> staged = Files.list(stagedLogs)) {
+            for (Path p : staged.toList()) {
+                if (!names.contains(p.getFileName().toString())) Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    private static FileTime modifiedTime(Path p) {
+        try {
+            return Files.getLastModifiedTime(p);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        try (Stream<Path> walk = Files.walk(path)) {
+            for (Path p : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package flammable.bunny.core;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Checks a submission package against what speedrun.com asks for: the run world, the five worlds
+ * played before it, any background worlds and three logs. The archive is streamed once; every
+ * entry is hashed as it goes by, and each nested world archive is read from that same stream to
+ * confirm it is an intact world (zip CRCs check out and it has a level.dat). The hashes are then
+ * compared with manifest.json, so nothing is extracted or read twice.
+ */
+public final class SubmissionVerifier {
+
+    private SubmissionVerifier() {}
+
+    /** What a package contains and what is wrong with it. */
+    public static final class Report {
+        private final List<String> problems = new ArrayList<>();
+        private final List<String> warnings = new ArrayList<>();
+        private String run;
+        private int last5;
+        private int background;
+        private int logs;
+
+        public boolean isValid() { return problems.isEmpty(); }
+        public List<String> getProblems() { return problems; }
+        public List<String> getWarnings() { return warnings; }
+        public String getRun() { return run; }
+        public int getLast5() { return last5; }
+        public int getBackground() { return background; }
+        public int getLogs() { return logs; }
+
+        /** Multi-line summary for a dialog or the terminal. */
+        public String describe() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(isValid() ? "Package OK" : "Package is missing required items").append('\n');
+            sb.append("Run: ").append(run != null ? run : "none").append('\n');
+            sb.append("Last5: ").append(last5).append("/5, Background: ").append(background)
+                    .append(", Logs: ").append(logs).append("/3");
+            for (String p : problems) sb.append("\n  ERROR: ").append(p);
+            for (String w : warnings) sb.append("\n  WARN: ").append(w);
+            return sb.toString();
+        }
+    }
+
+    // Size and hash of one entry as read from the archive
+    private static final class Seen {
+        final long size;
+        final String sha256;
+
+        Seen(long size, String sha256) {
+            this.size = size;
+            this.sha256 = sha256;
+        }
+    }
+
+    public static Report verify(Path zipFile) throws IOException {
+        Report report = new Report();
+        Map<String, Seen> seen = new LinkedHashMap<>();
+        JSONObject manifest = null;
+
+        // A file that cannot be opened is an error for the caller; anything after that is the archive's fault
+        InputStream raw = Files.newInputStream(zipFile);
+        try (ZipInputStream zip = new ZipInputStream(raw)) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String name = entry.getName();
+                if (entry.isDirectory()) continue;
+
+                if (name.equals(PackagesforRunSubmissionZipper.MANIFEST)) {
+                    try {
+                        manifest = new JSONObject(new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+                    } catch (Exception e) {
+                        report.problems.add("manifest.json is not valid JSON");
+                    }
+                    continue;
+                }
+
+                MessageDigest md = DownloadCache.newDigest();
+                CountingStream counted = new CountingStream(new DigestInputStream(zip, md));
+                if (name.endsWith(".zip")) {
+                    String problem = checkWorld(counted);
+                    if (problem != null) report.problems.add(name + ": " + problem);
+                }
+                counted.transferTo(OutputStream.nullOutputStream());
+                seen.put(name, new Seen(counted.count, HexFormat.of().formatHex(md.digest())));
+                classify(name, report);
+            }
+        } catch (IOException e) {
+            // ZipException for bad headers or CRCs, EOFException when the file ends early
+            report.problems.add("Archive is corrupt/truncated: " + (e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName()));
+            return report;
+        }
+
+        if (report.run == null) report.problems.add("No run world at the top level");
+        if (report.last5 < 5) report.problems.add("Last5 has " + report.last5 + " of 5 prior worlds");
+        if (report.logs < 3) report.problems.add("logs has " + report.logs + " of 3 log files");
+        if (report.background == 0) report.warnings.add("No background worlds (fine if SeedQueue was not used)");
+        compareManifest(manifest, seen, report);
+        return report;
+    }
+
+    private static void classify(String name, Report report) {
+        if (name.startsWith("Last5/") && name.endsWith(".zip")) {
+            report.last5++;
+        } else if (name.startsWith("Background/") && name.endsWith(".zip")) {
+            report.background++;
+        } else if (name.startsWith("logs/")) {
+            report.logs++;
+        } else if (!name.contains("/") && name.endsWith(".zip")) {
+            if (report.run != null) report.problems.add("More than one run world: " + report.run + ", " + name);
+            else report.run = name;
+        } else {
+            report.warnings.add("Unexpected entry " + name);
+        }
+    }
+
+    // Reads the nested archive's entries from the shared stream; null when it looks like a world
+    private static String checkWorld(InputStream in) {
+        boolean levelDat = false;
+        int entries = 0;
+        try {
+            ZipInputStream world = new ZipInputStream(in);
+            ZipEntry e;
+            while ((e = world.getNextEntry()) != null) {
+                entries++;
+                if (e.getName().equals("level.dat")) levelDat = true;
+                world.transferTo(OutputStream.nullOutputStream());
+            }
+        } catch (IOException e) {
+            return "damaged world archive (" + e.getMessage() + ")";
+        }
+        if (entries == 0) return "not a zip archive";
+        return levelDat ? null : "no level.dat";
+    }
+
+    private static void compareManifest(JSONObject manifest, Map<String, Seen> seen, Report report) {
+        if (manifest == null) {
+            report.warnings.add("No manifest.json; contents were checked but not their checksums");
+            return;
+        }
+        if (manifest.optInt("format", 0) > PackagesforRunSubmissionZipper.MANIFEST_FORMAT) {
+            report.warnings.add("manifest.json is from a newer Lingle; checksums not compared");
+            return;
+        }
+        if (report.run != null && !report.run.equals(manifest.optString("run"))) {
+            report.problems.add("Manifest names " + manifest.optString("run") + " as the run, archive has " + report.run);
+        }
+
+        JSONArray entries = manifest.optJSONArray("entries");
+        Map<String, Seen> unlisted = new LinkedHashMap<>(seen);
+        for (int i = 0; entries != null && i < entries.length(); i++) {
+            JSONObject e = entries.getJSONObject(i);
+            String name = e.optString("name");
+            Seen actual = unlisted.remove(name);
+            if (actual == null) {
+                report.problems.add("Missing " + name + " (listed in manifest)");
+            } else if (actual.size != e.optLong("size", -1) || !actual.sha256.equalsIgnoreCase(e.optString("sha256"))) {
+                report.problems.add("Checksum mismatch for " + name);
+            }
+        }
+        for (String name : unlisted.keySet()) {
+            report.problems.add("Not in manifest: " + name);
+        }
+    }
+
+    // Counts bytes of an entry without buffering it; close() must not close the shared zip stream
+    private static final class CountingStream extends InputStream {
+        private final InputStream in;
+        long count;
+
+        CountingStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public void close() {}
+    }
+}
@@ -0,0 +1,241 @@
+package flammable.bunny.core;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streaming .tar.gz extraction in one pass: entries are read through GZIP straight into the
+ * target directory, and only the subtree under a named directory is written. Understands ustar,
+ * pax extended headers and GNU long names. Symlinks, device nodes and fifos are skipped: with no
+ * links created, every path is checked lexically against the target and nothing is written outside it.
+ */
+public final class TarGzExtractor {
+
+    private static final int BLOCK = 512;
+
+    private TarGzExtractor() {}
+
+    /**
+     * Writes every entry below the first path component named subtree into target, with that
+     * component and everything before it stripped. Works for archives that put the directory at the
+     * top level as well as ones that nest it. Returns the number of files written.
+     */
+    public static int extract(InputStream gzipped, String subtree, Path target) throws IOException {
+        Path root = target.toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        InputStream in = new BufferedInputStream(new GZIPInputStream(gzipped, 64 * 1024), 64 * 1024);
+
+        byte[] header = new byte[BLOCK];
+        String longName = null;
+        String longLink = null;
+        String paxPath = null;
+        String paxLink = null;
+        Long paxSize = null;
+        int files = 0;
+
+        while (true) {
+            if (!readBlock(in, header)) break;
+            if (isZero(header)) break;
+
+            char type = (char) header[156];
+            long size = paxSize != null ? paxSize : parseNumber(header, 124, 12);
+
+            switch (type) {
+                case 'L' -> { longName = readString(in, size); continue; }
+                case 'K' -> { longLink = readString(in, size); continue; }
+                case 'x' -> {
+                    String[] pax = parsePax(readString(in, size));
+                    paxPath = pax[0];
+                    paxLink = pax[1];
+                    paxSize = pax[2] != null ? Long.parseLong(pax[2]) : null;
+                    continue;
+                }
+                case 'g' -> { skip(in, padded(size)); continue; }
+                default -> {}
+            }
+
+            String name = paxPath != null ? paxPath : longName != null ? longName : headerName(header);
+            String link = paxLink != null ? paxLink : longLink != null ? longLink : cString(header, 157, 100);
+            int mode = (int) parseNumber(header, 100, 8);
+            longName = longLink = paxPath = paxLink = null;
+            paxSize = null;
+
+            Path dest = destination(root, name, subtree);
+            if (dest == null) {
+                skip(in, padded(size));
+                continue;
+            }
+
+            switch (type) {
+                case '5' -> Files.createDirectories(dest);
+                case '0', '\0', '7' -> {
+                    Files.createDirectories(dest.getParent());
+                    try (OutputStream out = Files.newOutputStream(dest)) {
+                        copy(in, out, size);
+                    }
+                    setMode(dest, mode);
+                    skip(in, padded(size) - size);
+                    files++;
+                    continue;
+                }
+                // A link could point a later entry's parent outside the target, so none are created
+                case '2' -> LingleLogger.logWarn("Skipping symlink in archive: " + name + " -> " + link);
+                case '1' -> {
+                    Path source = destination(root, link, subtree);
+                    if (source != null && Files.exists(source)) {
+                        Files.createDirectories(dest.getParent());
+                        Files.copy(source, dest, StandardCopyOption.REPLACE_EXISTING);
+                        files++;
+                    }
+                }
+                default -> LingleLogger.logInfo("Skipping special tar entry: " + name);
+            }
+            skip(in, padded(size));
+        }
+        return files;
+    }
+
+    // null for entries outside the wanted subtree, or ones that would escape root
+    private static Path destination(Path root, String name, String subtree) {
+        List<String> parts = new ArrayList<>(Arrays.asList(name.split("/")));
+        parts.removeIf(p -> p.isEmpty() || p.equals("."));
+        int at = parts.indexOf(subtree);
+        if (at < 0) return null;
+        List<String> rel = parts.subList(at + 1, parts.size());
+        if (rel.isEmpty()) return root;
+        Path dest = root.resolve(String.join("/", rel)).normalize();
+        return dest.startsWith(root) ? dest : null;
+    }
+
+    private static String headerName(byte[] header) {
+        String name = cString(header, 0, 100);
+        // ustar splits long paths into prefix + name
+        if (new String(header, 257, 5, StandardCharsets.US_ASCII).equals("ustar")) {
+            String prefix = cString(header, 345, 155);
+            if (!prefix.isEmpty()) return prefix + "/" + name;
+        }
+        return name;
+    }
+
+    // Records look like "30 path=some/long/name\n", the leading number being the record's byte length
+    private static String[] parsePax(String records) {
+        String[] out = new String[3];
+        int pos = 0;
+        byte[] bytes = records.getBytes(StandardCharsets.UTF_8);
+        while (pos < bytes.length) {
+            int space = pos;
+            while (space < bytes.length && bytes[space] != ' ') space++;
+            if (space >= bytes.length) break;
+            int len = Integer.parseInt(new String(bytes, pos, space - pos, StandardCharsets.US_ASCII));
+            if (len <= 0) break;
+            String record = new String(bytes, space + 1, len - (space - pos) - 2, StandardCharsets.UTF_8);
+            int eq = record.indexOf('=');
+            if (eq > 0) {
+                String key = record.substring(0, eq);
+                String value = record.substring(eq + 1);
+                switch (key) {
+                    case "path" -> out[0] = value;
+                    case "linkpath" -> out[1] = value;
+                    case "size" -> out[2] = value;
+                    default -> {}
+                }
+            }
+            pos += len;
+        }
+        return out;
+    }
+
+    // Octal, or GNU base-256 when the high bit of the first byte is set
+    private static long parseNumber(byte[] header, int offset, int length) {
+        if ((header[offset] & 0x80) != 0) {
+            long value = header[offset] & 0x7f;
+            for (int i = 1; i < length; i++) value = (value << 8) | (header[offset + i] & 0xff);
+            return value;
+        }
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = header[i];
+            if (b == 0 || b == ' ') {
+                if (value != 0) break;
+                continue;
+            }
+            value = (value << 3) + (b - '0');
+        }
+        return value;
+    }
+
+    private static String cString(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) end++;
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static void setMode(Path file, int mode) {
+        Set<PosixFilePermission> perms = EnumSet.noneOf(PosixFilePermission.class);
+        PosixFilePermission[] order = {
+                PosixFilePermission.OTHERS_EXECUTE, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_READ,
+                PosixFilePermission.GROUP_EXECUTE, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_READ,
+                PosixFilePermission.OWNER_EXECUTE, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_READ};
+        for (int i = 0; i < order.length; i++) {
+            if ((mode & (1 << i)) != 0) perms.add(order[i]);
+        }
+        // Never lock ourselves out of a file we just wrote
+        perms.add(PosixFilePermission.OWNER_READ);
+        perms.add(PosixFilePermission.OWNER_WRITE);
+        try {
+            Files.setPosixFilePermissions(file, perms);
+        } catch (IOException | UnsupportedOperationException ignored) {}
+    }
+
+    private static String readString(InputStream in, long size) throws IOException {
+        byte[] data = in.readNBytes((int) size);
+        if (data.length < size) throw new EOFException("Truncated tar archive");
+        skip(in, padded(size) - size);
+        int end = data.length;
+        while (end > 0 && data[end - 1] == 0) end--;
+        return new String(data, 0, end, StandardCharsets.UTF_8);
+    }
+
+    private static void copy(InputStream in, OutputStream out, long size) throws IOException {
+        byte[] buf = new byte[64 * 1024];
+        long left = size;
+        while (left > 0) {
+            int n = in.read(buf, 0, (int) Math.min(buf.length, left));
+            if (n < 0) throw new EOFException("Truncated tar archive");
+            out.write(buf, 0, n);
+            left -= n;
+        }
+    }
+
+    private static void skip(InputStream in, long n) throws IOException {
+        in.skipNBytes(n);
+    }
+
+    private static long padded(long size) {
+        return (size + BLOCK - 1) / BLOCK * BLOCK;
+    }
+
+    private static boolean readBlock(InputStream in, byte[] block) throws IOException {
+        int n = in.readNBytes(block, 0, BLOCK);
+        if (n == 0) return false;
+        if (n < BLOCK) throw new EOFException("Truncated tar archive");
+        return true;
+    }
+
+    private static boolean isZero(byte[] block) {
+        for (byte b : block) if (b != 0) return false;
+        return true;
+    }
+}
@@ -1,18 +1,37 @@
 package flammable.bunny.core;
 
 import flammable.bunny.ui.UIUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
 
+import javax.swing.SwingUtilities;
 import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Self-update. New releases are downloaded in the background into a staging file beside the
+ * running jar, checked against the size and SHA-256 GitHub publishes for the asset, and recorded in
+ * ~/.local/share/lingle/update/pending.json. The jar is swapped on the next start, or right away
+ * if the user agrees to restart: the current jar is hardlinked to <jar>.previous and the staged
+ * file is renamed over it with ATOMIC_MOVE, so there is never a moment without a complete jar.
+ * {@code --rollback} swaps the previous jar back.
+ */
 public class Updater {
     public static final String CURRENT_VERSION = "1.1";
 
+    private static final String REPO = "flammablebunny/Lingle";
+    private static final Path UPDATE_DIR = Path.of(System.getProperty("user.home"))
+            .resolve(".local/share/lingle/update");
+    private static final Path PENDING = UPDATE_DIR.resolve("pending.json");
+    // Version the user rolled back from; not offered again
+    private static final Path SKIPPED = UPDATE_DIR.resolve("skipped-version");
+    // Set on a relaunched process so it waits for the one that started it to exit
+    private static final String RESTART_OF = "lingle.restartOf";
+
     private static int compareVersions(String v1) {
         String[] a1 = v1.replaceFirst("^v", "").split("\\.");
         String[] a2 = CURRENT_VERSION.replaceFirst("^v", "").split("\\.");
@@ -25,97 +44,219 @@ public class Updater {
         return 0;
     }
 
+    /** Checks for a release on a background thread, stages it and offers a restart once it is verified. */
     public static void checkForUpdates() {
-        try {
-            // Fetch latest release info
-            URL url = new URL("https://api.github.com/repos/flammablebunny/Lingle/releases/latest");
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestProperty("Accept", "application/vnd.github.v3+json");
-            conn.setConnectTimeout(5000);
-            conn.setReadTimeout(5000);
-
-            if (conn.getResponseCode() != 200) {
-                LingleLogger.logInfo("Update check failed: HTTP " + conn.getResponseCode());
-                return;
+        Thread t = new Thread(() -> {
+            LingleLogger.setSubsystem("update");
+            try {
+                String version = stageLatestRelease();
+                if (version == null) return;
+                SwingUtilities.invokeLater(() -> {
+                    boolean restart = UIUtils.showDarkConfirm(
+                            null,
+                            "Lingle Update",
+                            "Lingle " + version + " has been downloaded.\nRestart now to update?\n\n" +
+                                    "Otherwise it is installed the next time Lingle starts."
+                    );
+                    if (restart) {
+                        try {
+                            if (applyPendingUpdate()) restart();
+                        } catch (IOException e) {
+                            LingleLogger.logError("Update failed", e);
+                            ErrorCodes.showError(null, ErrorCodes.UPDATE_ERROR, "Update failed: " + e.getMessage());
+                        }
+                    }
+                });
+            } catch (Exception e) {
+                LingleLogger.logInfo("Update check failed: " + e.getMessage());
             }
+        }, "lingle-updater");
+        t.setDaemon(true);
+        t.start();
+    }
 
-            String json;
-            try (InputStream in = conn.getInputStream()) {
-                json = new String(in.readAllBytes(), StandardCharsets.UTF_8);
-            }
+    /**
+     * Swaps in a staged, verified update. Returns true if the jar on disk changed, in which case the
+     * caller should relaunch it; a staged file that fails verification is discarded.
+     */
+    public static synchronized boolean applyPendingUpdate() throws IOException {
+        JSONObject pending = readPending();
+        Path jar = currentJar();
+        if (pending == null || jar == null) return false;
 
-            // Extract tag_name (version)
-            Pattern tagPattern = Pattern.compile("\"tag_name\"\\s*:\\s*\"([^\"]+)\"");
-            Matcher tagMatcher = tagPattern.matcher(json);
-            if (!tagMatcher.find()) {
-                LingleLogger.logInfo("Update check: Could not find tag_name in response");
-                return;
-            }
-            String latest = tagMatcher.group(1).trim();
-
-            // Extract download URL for .jar file from assets
-            Pattern assetPattern = Pattern.compile("\"browser_download_url\"\\s*:\\s*\"([^\"]*\\.jar)\"");
-            Matcher assetMatcher = assetPattern.matcher(json);
-            if (!assetMatcher.find()) {
-                LingleLogger.logInfo("Update check: Could not find .jar download URL");
-                return;
-            }
-            String downloadUrl = assetMatcher.group(1);
+        Path staged = Path.of(pending.getString("staged"));
+        if (!jar.toString().equals(pending.optString("target")) || !verify(staged, pending)) {
+            LingleLogger.logWarn("Discarding staged update " + pending.optString("version"));
+            Files.deleteIfExists(staged);
+            Files.deleteIfExists(PENDING);
+            return false;
+        }
 
-            LingleLogger.logInfo("Update check: current=" + CURRENT_VERSION + ", latest=" + latest);
+        Path previous = previousJar(jar);
+        replaceWithLink(jar, previous);
+        Files.move(staged, jar, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(PENDING);
+        LingleLogger.logSuccess("Updated Lingle " + CURRENT_VERSION + " -> " + pending.getString("version") +
+                " (previous jar kept at " + previous + ")");
+        return true;
+    }
 
-            if (compareVersions(latest) <= 0) {
-                LingleLogger.logInfo("No update needed");
-                return;
-            }
+    /** Puts <jar>.previous back in place, keeping the current jar as the new .previous. */
+    public static void rollback() throws IOException {
+        Path jar = currentJar();
+        if (jar == null) throw new IOException("Lingle is not running from a jar");
+        Path previous = previousJar(jar);
+        if (!Files.isRegularFile(previous)) throw new IOException("No previous version at " + previous);
 
-            boolean choice = UIUtils.showDarkConfirm(
-                    null,
-                    "Lingle Update",
-                    "A new version (" + latest + ") is available.\nUpdate now?"
-            );
-            if (choice) {
-                downloadAndReplaceJar(downloadUrl);
-            }
-        } catch (Exception e) {
-            LingleLogger.logInfo("Update check failed: " + e.getMessage());
-        }
+        Path swap = jar.resolveSibling("." + jar.getFileName() + ".rollback");
+        replaceWithLink(jar, swap);
+        Files.move(previous, jar, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(swap, previous, StandardCopyOption.ATOMIC_MOVE);
+
+        // Do not immediately download the version that was just rolled back
+        Files.createDirectories(UPDATE_DIR);
+        Files.writeString(SKIPPED, CURRENT_VERSION, StandardCharsets.UTF_8);
+        JSONObject pending = readPending();
+        if (pending != null) Files.deleteIfExists(Path.of(pending.getString("staged")));
+        Files.deleteIfExists(PENDING);
+        LingleLogger.logSuccess("Rolled back from Lingle " + CURRENT_VERSION + "; " + previous + " now holds it");
+    }
+
+    /** Starts the jar on disk again and exits this process. */
+    public static void restart() throws IOException {
+        Path jar = currentJar();
+        if (jar == null) throw new IOException("Lingle is not running from a jar");
+        String java = ProcessHandle.current().info().command().orElse("java");
+        List<String> cmd = new ArrayList<>(List.of(java, "-D" + RESTART_OF + "=" + ProcessHandle.current().pid(), "-jar", jar.toString()));
+        new ProcessBuilder(cmd).inheritIO().start();
+        System.exit(0);
     }
 
-    private static void downloadAndReplaceJar(String downloadUrl) throws IOException {
+    /** In a relaunched process, waits for the old one to exit so it can take over the instance lock. */
+    public static void awaitPreviousInstance() {
+        String pid = System.getProperty(RESTART_OF);
+        if (pid == null) return;
         try {
-            Path tmp = Files.createTempFile("lingle-update", ".jar");
-            try (InputStream in = new URL(downloadUrl).openStream()) {
-                Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
-            }
+            ProcessHandle.of(Long.parseLong(pid)).ifPresent(old -> {
+                try {
+                    old.onExit().get(10, TimeUnit.SECONDS);
+                } catch (Exception ignored) {}
+            });
+        } catch (NumberFormatException ignored) {}
+    }
 
-            String jarPath = new File(Updater.class.getProtectionDomain()
-                    .getCodeSource().getLocation().toURI()).getAbsolutePath();
+    // Returns the version that is now staged and verified, or null if there is nothing to offer
+    private static String stageLatestRelease() throws IOException, InterruptedException {
+        Path jar = currentJar();
+        if (jar == null) {
+            LingleLogger.logInfo("Update check skipped: not running from a jar");
+            return null;
+        }
 
-            Path updaterScript = Files.createTempFile("lingle-updater", ".sh");
-            String scriptContent = String.format("""
-                    #!/bin/bash
-                    # Wait for the app to fully exit
-                    sleep 3
+        JSONObject release = DownloadCache.latestRelease(REPO);
+        String latest = release.optString("tag_name", "").trim();
+        if (latest.isEmpty()) {
+            LingleLogger.logInfo("Update check: Could not find tag_name in response");
+            return null;
+        }
+        LingleLogger.logInfo("Update check: current=" + CURRENT_VERSION + ", latest=" + latest);
+        if (compareVersions(latest) <= 0) {
+            LingleLogger.logInfo("No update needed");
+            return null;
+        }
+        if (Files.exists(SKIPPED) && Files.readString(SKIPPED, StandardCharsets.UTF_8).trim().equals(latest.replaceFirst("^v", ""))) {
+            LingleLogger.logInfo("Update check: " + latest + " was rolled back, not offering it again");
+            return null;
+        }
 
-                    # Replace the old jar with the new one
-                    rm -f "%s"
-                    mv "%s" "%s"
+        JSONObject asset = jarAsset(release.optJSONArray("assets"));
+        if (asset == null) {
+            LingleLogger.logInfo("Update check: Could not find .jar download URL");
+            return null;
+        }
+        String digest = asset.optString("digest", "");
+        if (!digest.startsWith("sha256:")) {
+            LingleLogger.logWarn("Update check: release " + latest + " publishes no SHA-256 for its jar, not staging it");
+            return null;
+        }
+        String sha256 = digest.substring("sha256:".length());
+        long size = asset.getLong("size");
 
-                    # Relaunch the app
-                    java -jar "%s" &
+        JSONObject pending = readPending();
+        Path staged = jar.resolveSibling("." + jar.getFileName() + ".update");
+        if (pending != null && sha256.equalsIgnoreCase(pending.optString("sha256")) && verify(staged, pending)) {
+            return latest;
+        }
+
+        LingleLogger.logInfo("Downloading Lingle " + latest + " in the background...");
+        DownloadManager.download(asset.getString("browser_download_url"), staged, sha256, null);
+
+        pending = new JSONObject();
+        pending.put("version", latest);
+        pending.put("sha256", sha256.toLowerCase());
+        pending.put("size", size);
+        pending.put("staged", staged.toString());
+        pending.put("target", jar.toString());
+        if (!verify(staged, pending)) {
+            Files.deleteIfExists(staged);
+            throw new IOException("Downloaded update does not match the published size and SHA-256");
+        }
+        writePending(pending);
+        LingleLogger.logSuccess("Lingle " + latest + " staged and verified");
+        return latest;
+    }
+
+    private static JSONObject jarAsset(JSONArray assets) {
+        if (assets == null) return null;
+        for (int i = 0; i < assets.length(); i++) {
+            JSONObject asset = assets.getJSONObject(i);
+            if (asset.optString("name").endsWith(".jar")) return asset;
+        }
+        return null;
+    }
+
+    private static boolean verify(Path staged, JSONObject pending) throws IOException {
+        if (!Files.isRegularFile(staged) || Files.size(staged) != pending.optLong("size", -1)) return false;
+        return DownloadCache.sha256(staged).equalsIgnoreCase(pending.optString("sha256"));
+    }
+
+    // target ends up as a second name for source; a hardlink when the filesystem allows it
+    private static void replaceWithLink(Path source, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, source);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
 
-                    # Clean up this script
-                    rm -f "$0"
-                    """, jarPath, tmp.toString(), jarPath, jarPath);
+    private static Path previousJar(Path jar) {
+        return jar.resolveSibling(jar.getFileName() + ".previous");
+    }
 
-            Files.writeString(updaterScript, scriptContent, StandardCharsets.UTF_8);
-            updaterScript.toFile().setExecutable(true);
+    // null when running from a classes directory, e.g. in an IDE
+    private static Path currentJar() {
+        try {
+            Path path = Path.of(Updater.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toAbsolutePath();
+            return Files.isRegularFile(path) && path.toString().endsWith(".jar") ? path : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
 
-            new ProcessBuilder("/bin/bash", updaterScript.toString()).start();
-            System.exit(0);
+    private static JSONObject readPending() {
+        try {
+            if (!Files.exists(PENDING)) return null;
+            return new JSONObject(Files.readString(PENDING, StandardCharsets.UTF_8));
         } catch (Exception e) {
-            throw new IOException("Update failed", e);
+            return null;
         }
     }
+
+    private static void writePending(JSONObject pending) throws IOException {
+        Files.createDirectories(UPDATE_DIR);
+        Path tmp = Files.createTempFile(UPDATE_DIR, "pending-", ".part");
+        Files.writeString(tmp, pending.toString(2), StandardCharsets.UTF_8);
+        Files.move(tmp, PENDING, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
 }
@@ -0,0 +1,163 @@
+package flammable.bunny.core;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Built waywall packages under ~/.local/share/lingle/cache/waywall/<commit>-<distro>-<pacur version>/.
+ * Setup resolves the upstream commit with one git ls-remote and the pacur version from the Go module
+ * proxy; when a package for that triple already exists it is installed directly and the pacur,
+ * container and build steps are skipped.
+ */
+public final class WaywallBuildCache {
+
+    public static final String WAYWALL_REPO = "https://github.com/ByPaco10/waywall";
+
+    private static final Path CACHE_DIR = Path.of(System.getProperty("user.home"))
+            .resolve(".local/share/lingle/cache/waywall");
+    private static final String PACUR_LATEST = "https://proxy.golang.org/github.com/pacur/pacur/@latest";
+    private static final int KEEP_BUILDS = 3;
+
+    private WaywallBuildCache() {}
+
+    /** Cache key for a commit on this distro, e.g. 3f9c2a1b7d0e-arch-v0.3.2. */
+    public static String key(String commit, String pacurVersion) {
+        String distro = HardwareProfile.get().getDistro().toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9._-]", "_");
+        String shortCommit = commit.length() > 12 ? commit.substring(0, 12) : commit;
+        return shortCommit + "-" + distro + "-" + pacurVersion;
+    }
+
+    /** Commit the remote's default branch points at, without cloning anything. */
+    public static String resolveRemoteHead(String repoUrl) throws IOException, InterruptedException {
+        return gitHash(null, "git", "ls-remote", repoUrl, "HEAD");
+    }
+
+    /** Commit a local checkout is on; the one actually built, even if upstream moved after resolving. */
+    public static String checkedOutCommit(Path repoDir) throws IOException, InterruptedException {
+        return gitHash(repoDir, "git", "rev-parse", "HEAD");
+    }
+
+    /** pacur version from the module directory go install unpacked, e.g. pacur@v0.3.2 -> v0.3.2. */
+    public static String pacurVersionOf(Path pacurDir) {
+        String name = pacurDir.getFileName().toString();
+        int at = name.indexOf('@');
+        return at >= 0 ? name.substring(at + 1) : name;
+    }
+
+    /** Version go install ...@latest would pick, from the Go module proxy (cached with its ETag). */
+    public static String latestPacurVersion() throws IOException, InterruptedException {
+        String version = new JSONObject(DownloadCache.fetchText(PACUR_LATEST)).optString("Version", "");
+        if (version.isEmpty()) throw new IOException("Go proxy did not report a pacur version");
+        return version;
+    }
+
+    /** The cached package for this key, or null. */
+    public static Path find(String key, String pkgManager) {
+        Path dir = CACHE_DIR.resolve(key);
+        if (!Files.isDirectory(dir)) return null;
+        try (Stream<Path> s = Files.list(dir)) {
+            Path hit = s.filter(p -> matchesPackageManager(p, pkgManager)).findFirst().orElse(null);
+            if (hit != null) touch(dir);
+            return hit;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** Copies a freshly built package into the cache and drops the oldest builds beyond the last few. */
+    public static Path store(String key, Path pkgFile) throws IOException {
+        Files.createDirectories(CACHE_DIR);
+        Path dir = CACHE_DIR.resolve(key);
+        Path staging = Files.createTempDirectory(CACHE_DIR, key + ".tmp");
+        try {
+            Files.copy(pkgFile, staging.resolve(pkgFile.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            deleteRecursively(dir);
+            Files.move(staging, dir, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            deleteRecursively(staging);
+        }
+        LingleLogger.logInfo("Cached waywall build " + key);
+        prune();
+        return dir.resolve(pkgFile.getFileName());
+    }
+
+    /** Built package in waywall-build for this package manager, whatever version pacur stamped on it. */
+    public static Path findBuiltPackage(Path buildDir, String pkgManager) throws IOException {
+        if (!Files.isDirectory(buildDir)) return null;
+        try (Stream<Path> s = Files.list(buildDir)) {
+            return s.filter(p -> p.getFileName().toString().startsWith("waywall"))
+                    .filter(p -> matchesPackageManager(p, pkgManager))
+                    .findFirst().orElse(null);
+        }
+    }
+
+    private static boolean matchesPackageManager(Path p, String pkgManager) {
+        String name = p.getFileName().toString();
+        return switch (pkgManager) {
+            case "pacman" -> name.endsWith(".pkg.tar.zst");
+            case "dnf" -> name.endsWith(".rpm") && !name.endsWith(".src.rpm");
+            case "apt" -> name.endsWith(".deb");
+            default -> false;
+        };
+    }
+
+    private static String gitHash(Path workDir, String... cmd) throws IOException, InterruptedException {
+        ProcessRunner.Result result = ProcessRunner.of(cmd)
+                .directory(workDir)
+                .capture().quiet()
+                .timeout(Duration.ofSeconds(60))
+                .run();
+        String out = result.getStdout().trim();
+        if (!result.isSuccess() || out.length() < 40) {
+            throw new IOException(String.join(" ", cmd) + " did not return a commit");
+        }
+        return out.substring(0, 40);
+    }
+
+    private static void prune() {
+        try (Stream<Path> s = Files.list(CACHE_DIR)) {
+            List<Path> builds = s.filter(Files::isDirectory)
+                    .filter(p -> !p.getFileName().toString().contains(".tmp"))
+                    .sorted(Comparator.comparing(WaywallBuildCache::lastUsed).reversed())
+                    .toList();
+            for (int i = KEEP_BUILDS; i < builds.size(); i++) {
+                deleteRecursively(builds.get(i));
+            }
+        } catch (IOException e) {
+            LingleLogger.logWarn("Could not prune waywall build cache: " + e.getMessage());
+        }
+    }
+
+    private static long lastUsed(Path dir) {
+        try {
+            return Files.getLastModifiedTime(dir).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void touch(Path dir) {
+        try {
+            Files.setLastModifiedTime(dir, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) {}
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) return;
+        try (Stream<Path> walk = Files.walk(path)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException ignored) {}
+            });
+        }
+    }
+}
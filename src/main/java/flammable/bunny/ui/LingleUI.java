@@ -11,6 +11,7 @@ import java.io.IOException;
 import java.nio.file.*;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -174,7 +175,6 @@ public class LingleUI extends JFrame {
             LingleState.adwIntervalSeconds = Math.max(1, val);
             LingleState.saveState();
             if (LingleState.adwEnabled && LingleState.enabled) {
-                AdwManager.stopAdwQuietly();
                 AdwManager.startAdwIfNeeded();
             }
         });
@@ -550,13 +550,8 @@ public class LingleUI extends JFrame {
                 LingleState.saveState();
                 logInfo("Setting waywall toggle_lingle to: " + LingleState.adwEnabled);
                 WaywallConfig.setToggle("toggle_lingle", LingleState.adwEnabled);
-                if (LingleState.adwEnabled) {
-                    logInfo("Starting ADW...");
-                    AdwManager.startAdwIfNeeded();
-                } else {
-                    logInfo("Stopping ADW...");
-                    AdwManager.stopAdwQuietly();
-                }
+                logInfo(LingleState.adwEnabled ? "Starting ADW..." : "Stopping ADW...");
+                AdwManager.startAdwIfNeeded();
                 adwEnableBtn.setText(LingleState.adwEnabled ? "Disable ADW" : "Enable ADW");
                 String mode = LingleState.enabled ? "TMPFS" : "Normal";
                 logSuccess("ADW " + (LingleState.adwEnabled ? "enabled" : "disabled") + " in " + mode + " mode");
@@ -651,7 +646,7 @@ public class LingleUI extends JFrame {
         };
 
         class RowUI { JTextField tf; JButton browse; JLabel warn; JPanel row; String placeholder; }
-        java.util.Map<String, RowUI> rowMap = new java.util.HashMap<>();
+        java.util.Map<String, RowUI> rowMap = new HashMap<>();
 
 
         bgBtn.addActionListener(e -> {
@@ -777,7 +772,7 @@ public class LingleUI extends JFrame {
         autoDetectBtn.addActionListener(ev -> {
             Path homeDir = Path.of(System.getProperty("user.home"));
             Path[] bases = new Path[]{ homeDir.resolve("mcsr"), homeDir.resolve("mcsr-apps"), homeDir.resolve(".config/waywall") };
-            java.util.Map<String, Path> found = new java.util.HashMap<>();
+            java.util.Map<String, Path> found = new HashMap<>();
             for (Path base : bases) {
                 if (Files.exists(base)) {
                     try (var walk = Files.walk(base, 6)) {
@@ -1092,10 +1087,6 @@ public class LingleUI extends JFrame {
 
         packagesButton.addActionListener(e -> {
             logAction("User clicked: Zip Packages for Run Submission");
-            if (!DependencyInstaller.ensureDeps(this)) {
-                logError("Dependencies check failed");
-                return;
-            }
 
             JFileChooser fc = new JFileChooser();
             fc.setDialogTitle("Select output folder for SRC zip");
@@ -1124,44 +1115,30 @@ public class LingleUI extends JFrame {
             progress.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
 
             Thread worker = new Thread(() -> {
-                int ec;
+                Path created = null;
+                String failure = null;
+                String check = null;
                 try {
-                    Path script = PackagesforRunSubmissionZipper.install(outDir);
-                    logCommand("python3 " + script + " " + outDir);
-                    Process p = new ProcessBuilder("python3", script.toString(), outDir.toString()).start();
-
-                    // Log stdout
-                    try (java.io.BufferedReader reader = new java.io.BufferedReader(
-                            new java.io.InputStreamReader(p.getInputStream()))) {
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            logOutput(line);
-                        }
-                    }
-                    // Log stderr
-                    try (java.io.BufferedReader reader = new java.io.BufferedReader(
-                            new java.io.InputStreamReader(p.getErrorStream()))) {
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            logOutput(line);
-                        }
-                    }
-
-                    ec = p.waitFor();
-                    logInfo("Python script exited with code: " + ec);
-                } catch (Exception ex) {
+                    created = PackagesforRunSubmissionZipper.createPackage(outDir);
+                    // One streaming pass over the finished package; catches anything missing before upload
+                    SubmissionVerifier.Report report = SubmissionVerifier.verify(created);
+                    check = report.describe();
+                    if (!report.isValid()) logWarn("Submission package check:\n" + check);
+                } catch (Throwable ex) {
+                    // Errors too (e.g. OutOfMemoryError), or the modal progress dialog never closes
                     logError("Package creation failed", ex);
-                    ec = 1;
+                    failure = ex.getMessage() != null ? ex.getMessage() : ex.toString();
                 }
-                final int exitCode = ec;
+                final Path zipPath = created;
+                final String error = failure;
+                final String verified = check;
                 SwingUtilities.invokeLater(() -> {
                     progress.dispose();
-                    if (exitCode == 0) {
+                    if (zipPath != null && verified != null) {
                         logSuccess("Package created successfully in: " + outDir);
-                        showDarkMessage(this, "Done", "Package created in:\n" + outDir);
+                        showDarkMessage(this, "Done", "Package created:\n" + zipPath + "\n\n" + verified);
                     } else {
-                        logError("Packaging failed with exit code: " + exitCode);
-                        showDarkMessage(this, "Error Code 14", "Packaging failed.");
+                        showDarkMessage(this, "Error Code 14", "Packaging failed.\n" + error);
                     }
                 });
             });
@@ -1201,12 +1178,16 @@ public class LingleUI extends JFrame {
             "Jemalloc"
         };
 
+        List<JCheckBox> packageBoxes = new ArrayList<>();
         for (String pkg : packages) {
             JCheckBox cb = createStyledCheckBox(pkg);
+            cb.setName(pkg);
             cb.setAlignmentX(Component.LEFT_ALIGNMENT);
             cb.setBorder(BorderFactory.createEmptyBorder(5, 2, 5, 2));
             installerPanel.add(cb);
+            packageBoxes.add(cb);
         }
+        refreshInstalledState(packageBoxes);
 
         installerPanel.add(Box.createVerticalStrut(20));
 
@@ -1268,9 +1249,9 @@ public class LingleUI extends JFrame {
 
         installButton.addActionListener(e -> {
             List<String> selected = new ArrayList<>();
-            for (Component c : installerPanel.getComponents()) {
-                if (c instanceof JCheckBox cb && cb.isSelected()) {
-                    selected.add(cb.getText());
+            for (JCheckBox cb : packageBoxes) {
+                if (cb.isSelected()) {
+                    selected.add(cb.getName());
                 }
             }
             if (selected.isEmpty()) {
@@ -1279,7 +1260,7 @@ public class LingleUI extends JFrame {
                 return;
             }
             logAction("User clicked: Install Selected - Packages: " + String.join(", ", selected));
-            PackageInstaller.installPackages(selected, this);
+            PackageInstaller.installPackages(selected, this, () -> refreshInstalledState(packageBoxes));
         });
 
         debounceButton.addActionListener(e -> {
@@ -1354,31 +1335,14 @@ public class LingleUI extends JFrame {
 
                 logInfo("Cloning waywall config from: " + repoUrl + (branch != null ? " (branch: " + branch + ")" : ""));
 
-                ProcessBuilder pb;
-                if (branch != null) {
-                    pb = new ProcessBuilder("git", "clone", repoUrl, waywallConfig.toString(), "-b", branch);
-                } else {
-                    pb = new ProcessBuilder("git", "clone", repoUrl, waywallConfig.toString());
-                }
-                pb.redirectErrorStream(true);
-                Process proc = pb.start();
-
-                // Read output
-                try (var reader = new java.io.BufferedReader(new java.io.InputStreamReader(proc.getInputStream()))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        logOutput(line);
-                    }
-                }
-
-                int exitCode = proc.waitFor();
-                if (exitCode == 0) {
+                try {
+                    GitMirror.checkout(repoUrl, branch, waywallConfig);
                     logSuccess("Waywall config installed successfully: " + configType);
                     showDarkMessage(this, "Success", "Waywall config installed successfully!\n\nConfig: " + configType +
                         (Files.exists(backupDir) ? "\n\nYour previous config was backed up to:\n" + backupDir : ""));
-                } else {
-                    logError("Failed to clone waywall config, exit code: " + exitCode);
-                    showDarkMessage(this, "Error", "Failed to install waywall config (exit code: " + exitCode + ")");
+                } catch (IOException cloneEx) {
+                    logError("Failed to clone waywall config: " + cloneEx.getMessage());
+                    showDarkMessage(this, "Error", "Failed to install waywall config:\n" + cloneEx.getMessage());
                 }
             } catch (Exception ex) {
                 logError("Failed to install waywall config", ex);
@@ -1413,95 +1377,7 @@ public class LingleUI extends JFrame {
         supportPanel.add(Box.createVerticalGlue());
 
         // ===== Log panel =====
-        JPanel logPanel = new JPanel(new BorderLayout(10, 10));
-        logPanel.setBackground(BG);
-        logPanel.setBorder(BorderFactory.createEmptyBorder(15, 10, 15, 10));
-
-        JLabel logTitle = new JLabel("System Log");
-        logTitle.setForeground(TXT);
-        logTitle.setFont(UI_FONT_BOLD);
-        logTitle.setBorder(BorderFactory.createEmptyBorder(0, 0, 10, 0));
-
-        JTextArea logTextArea = new JTextArea();
-        logTextArea.setEditable(false);
-        logTextArea.setBackground(new Color(30, 30, 30));
-        logTextArea.setForeground(new Color(200, 200, 200));
-        logTextArea.setFont(new Font("Monospaced", Font.PLAIN, 11));
-        logTextArea.setLineWrap(false);
-        logTextArea.setWrapStyleWord(false);
-
-        JScrollPane logScrollPane = new JScrollPane(logTextArea);
-        logScrollPane.setBackground(BG);
-        logScrollPane.getViewport().setBackground(new Color(30, 30, 30));
-        logScrollPane.setBorder(BorderFactory.createLineBorder(new Color(100, 100, 100), 1));
-        logScrollPane.getVerticalScrollBar().setUnitIncrement(16);
-
-        // Register the text area with the logger
-        LingleLogger.registerListener(logTextArea);
-
-        JPanel logButtonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 0));
-        logButtonPanel.setBackground(BG);
-
-        JButton copyLogButton = makeButton("Copy Log", 120);
-        JButton exportLogButton = makeButton("Export Log", 120);
-        JButton clearLogButton = makeButton("Clear Log", 120);
-
-        copyLogButton.addActionListener(e -> {
-            try {
-                String logContent = LingleLogger.getAllLogs();
-                java.awt.datatransfer.StringSelection selection = new java.awt.datatransfer.StringSelection(logContent);
-                java.awt.Toolkit.getDefaultToolkit().getSystemClipboard().setContents(selection, selection);
-                LingleLogger.logSuccess("Log copied to clipboard");
-                showDarkMessage(this, "Success", "Log copied to clipboard");
-            } catch (Exception ex) {
-                LingleLogger.logError("Failed to copy log to clipboard", ex);
-                showDarkMessage(this, "Error", "Failed to copy log: " + ex.getMessage());
-            }
-        });
-
-        exportLogButton.addActionListener(e -> {
-            try {
-                JFileChooser fileChooser = new JFileChooser();
-                fileChooser.setDialogTitle("Export Log");
-                fileChooser.setSelectedFile(new java.io.File("lingle-log-" + System.currentTimeMillis() + ".txt"));
-
-                if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
-                    java.io.File file = fileChooser.getSelectedFile();
-                    String logContent = LingleLogger.getAllLogs();
-                    java.nio.file.Files.writeString(file.toPath(), logContent);
-                    LingleLogger.logSuccess("Log exported to: " + file.getAbsolutePath());
-                    showDarkMessage(this, "Success", "Log exported to:\n" + file.getAbsolutePath());
-                }
-            } catch (Exception ex) {
-                LingleLogger.logError("Failed to export log", ex);
-                showDarkMessage(this, "Error", "Failed to export log: " + ex.getMessage());
-            }
-        });
-
-        clearLogButton.addActionListener(e -> {
-            int choice = JOptionPane.showConfirmDialog(this,
-                "Are you sure you want to clear the log?",
-                "Clear Log",
-                JOptionPane.YES_NO_OPTION,
-                JOptionPane.WARNING_MESSAGE);
-
-            if (choice == JOptionPane.YES_OPTION) {
-                LingleLogger.clear();
-                LingleLogger.logInfo("Log cleared by user");
-            }
-        });
-
-        logButtonPanel.add(copyLogButton);
-        logButtonPanel.add(exportLogButton);
-        logButtonPanel.add(clearLogButton);
-
-        JPanel logTopPanel = new JPanel(new BorderLayout());
-        logTopPanel.setBackground(BG);
-        logTopPanel.add(logTitle, BorderLayout.NORTH);
-
-        logPanel.add(logTopPanel, BorderLayout.NORTH);
-        logPanel.add(logScrollPane, BorderLayout.CENTER);
-        logPanel.add(logButtonPanel, BorderLayout.SOUTH);
+        LogViewerPanel logPanel = new LogViewerPanel();
 
         // Log startup
         LingleLogger.logInfo("Lingle v" + Updater.CURRENT_VERSION + " started");
@@ -1594,26 +1470,8 @@ public class LingleUI extends JFrame {
                     logError("Script not found: " + script);
                     throw new IOException("Script not found: " + script);
                 }
-                Process p = new ProcessBuilder("/bin/bash", script.toString()).start();
-
-                // Log all output from the script
-                try (java.io.BufferedReader reader = new java.io.BufferedReader(
-                        new java.io.InputStreamReader(p.getInputStream()))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        logOutput(line);
-                    }
-                }
-                // Log all error output from the script
-                try (java.io.BufferedReader reader = new java.io.BufferedReader(
-                        new java.io.InputStreamReader(p.getErrorStream()))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        logOutput(line);
-                    }
-                }
-
-                exitCode = p.waitFor();
+                // Both streams are drained together, so a chatty stderr cannot stall the script
+                exitCode = ProcessRunner.of("/bin/bash", script.toString()).run().getExitCode();
                 logInfo("Script execution completed with exit code: " + exitCode);
             } catch (Exception ex) {
                 logError("TMPFS toggle failed", ex);
@@ -1627,8 +1485,7 @@ public class LingleUI extends JFrame {
                     runButton.setText(LingleState.enabled ? "Disable" : "Enable");
                     if (LingleState.enabled) applySelected(runButton); else applyNormal(runButton);
                     LingleState.saveState();
-                    if (LingleState.adwEnabled) AdwManager.startAdwIfNeeded();
-                    else AdwManager.stopAdwQuietly();
+                    AdwManager.startAdwIfNeeded();
                     logSuccess("TMPFS " + (LingleState.enabled ? "enabled" : "disabled"));
                     showDarkMessage(this, "Success", "TMPFS " + (LingleState.enabled ? "enabled." : "disabled."));
                 } else {
@@ -2195,26 +2052,29 @@ public class LingleUI extends JFrame {
         dlg.setVisible(true);
     }
 
-    private boolean detectNvidiaGPU() {
-        try {
-            logCommand("lspci");
-            Process p = new ProcessBuilder("lspci").start();
-            boolean found = false;
-            try (var reader = new java.io.BufferedReader(new java.io.InputStreamReader(p.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    logOutput(line);
-                    if (line.toLowerCase().contains("nvidia") && line.toLowerCase().contains("vga")) {
-                        found = true;
-                    }
-                }
+    // Marks each installer entry as installed or missing; the inventory query runs off the EDT
+    private void refreshInstalledState(List<JCheckBox> boxes) {
+        Thread probe = new Thread(() -> {
+            Map<String, Boolean> state = new HashMap<>();
+            for (JCheckBox cb : boxes) {
+                state.put(cb.getName(), PackageInstaller.isInstalled(cb.getName()));
             }
-            p.waitFor();
-            return found;
-        } catch (Exception e) {
-            logError("Failed to detect NVIDIA GPU", e);
-        }
-        return false;
+            SwingUtilities.invokeLater(() -> {
+                for (JCheckBox cb : boxes) {
+                    boolean installed = state.get(cb.getName());
+                    cb.setText(cb.getName() + (installed ? "  (installed)" : "  (missing)"));
+                    cb.setToolTipText(installed ? "Already installed; selecting it again updates it" : null);
+                }
+            });
+        }, "lingle-inventory");
+        probe.setDaemon(true);
+        probe.start();
+    }
+
+    private boolean detectNvidiaGPU() {
+        HardwareProfile hw = HardwareProfile.get();
+        logInfo("Hardware: " + hw);
+        return hw.hasNvidiaGpu();
     }
 
     // Helper class for remap row
@@ -0,0 +1,417 @@
+package flammable.bunny.ui;
+
+import flammable.bunny.core.LingleLogger;
+import flammable.bunny.core.LogEvent;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.PopupMenuEvent;
+import javax.swing.event.PopupMenuListener;
+import java.awt.*;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import static flammable.bunny.ui.UIConstants.*;
+import static flammable.bunny.ui.UIUtils.*;
+
+/**
+ * Log tab. The list model only stores sequence numbers of matching events and reads the events
+ * from LingleLogger's ring on demand, so JList renders just the visible rows however long the log is.
+ * New events only ever fire intervalAdded, and rows the ring has dropped fire intervalRemoved.
+ */
+public class LogViewerPanel extends JPanel {
+
+    private static final int PAGE_SIZE = 1000;
+    private static final Color LOG_BG = new Color(30, 30, 30);
+    private static final Color LOG_FG = new Color(200, 200, 200);
+    private static final Color ERROR_FG = new Color(240, 110, 110);
+    private static final Color WARN_FG = new Color(235, 185, 90);
+    private static final Color SUCCESS_FG = new Color(120, 210, 120);
+    private static final Color COMMAND_FG = new Color(130, 170, 230);
+
+    private final LogListModel model = new LogListModel();
+    private final JList<LogEvent> list = new JList<>(model);
+    private final JComboBox<String> levelFilter = new JComboBox<>();
+    private final JComboBox<String> subsystemFilter = new JComboBox<>();
+    private final JTextField searchField = new JTextField(18);
+    private final JCheckBox followBox = createStyledCheckBox("Follow");
+    private final JLabel countLabel = new JLabel();
+    private final FontMetrics metrics;
+    private int maxRowWidth = 0;
+    // Highest seq the model has already been offered; pump batches queued before a rebuild repeat it
+    private long lastSeq = -1;
+    private boolean autoScrolling = false;
+    private int lastScrollValue = 0;
+    private final JScrollBar verticalBar;
+
+    public LogViewerPanel() {
+        super(new BorderLayout(10, 10));
+        setBackground(BG);
+        setBorder(BorderFactory.createEmptyBorder(15, 10, 15, 10));
+
+        Font mono = new Font("Monospaced", Font.PLAIN, 11);
+        metrics = getFontMetrics(mono);
+
+        list.setFont(mono);
+        list.setBackground(LOG_BG);
+        list.setForeground(LOG_FG);
+        list.setCellRenderer(new EventRenderer());
+        // Fixed sizes keep JList from measuring every row on layout
+        list.setFixedCellHeight(metrics.getHeight() + 2);
+        list.setFixedCellWidth(400);
+
+        JScrollPane scroll = new JScrollPane(list);
+        scroll.setBackground(BG);
+        scroll.getViewport().setBackground(LOG_BG);
+        scroll.setBorder(BorderFactory.createLineBorder(new Color(100, 100, 100), 1));
+        scroll.getVerticalScrollBar().setUnitIncrement(16);
+        verticalBar = scroll.getVerticalScrollBar();
+        // Any scroll away from the bottom (wheel, keys, dragging or clicking the bar) pauses follow mode,
+        // scrolling back to the bottom resumes it. Rows being added only grow the maximum, so they are ignored.
+        verticalBar.addAdjustmentListener(e -> {
+            BoundedRangeModel m = verticalBar.getModel();
+            if (autoScrolling || m.getValue() == lastScrollValue) return;
+            lastScrollValue = m.getValue();
+            followBox.setSelected(m.getValue() + m.getExtent() >= m.getMaximum() - list.getFixedCellHeight());
+        });
+
+        add(buildTop(), BorderLayout.NORTH);
+        add(scroll, BorderLayout.CENTER);
+        add(buildButtons(), BorderLayout.SOUTH);
+
+        LingleLogger.registerListener(new LingleLogger.LogListener() {
+            @Override
+            public void onEvents(List<LogEvent> events) {
+                SwingUtilities.invokeLater(() -> append(events));
+            }
+
+            @Override
+            public void onClear() {
+                SwingUtilities.invokeLater(() -> {
+                    model.clear();
+                    updateCount();
+                });
+            }
+        });
+    }
+
+    private JPanel buildTop() {
+        JLabel title = new JLabel("System Log");
+        title.setForeground(TXT);
+        title.setFont(UI_FONT_BOLD);
+        title.setBorder(BorderFactory.createEmptyBorder(0, 0, 10, 0));
+
+        levelFilter.addItem("All levels");
+        for (LogEvent.Level level : LogEvent.Level.values()) levelFilter.addItem(level.name());
+        subsystemFilter.addItem("All subsystems");
+        subsystemFilter.addPopupMenuListener(new PopupMenuListener() {
+            @Override
+            public void popupMenuWillBecomeVisible(PopupMenuEvent e) {
+                DefaultComboBoxModel<String> m = (DefaultComboBoxModel<String>) subsystemFilter.getModel();
+                for (String sub : LingleLogger.getSubsystems()) {
+                    if (m.getIndexOf(sub) < 0) m.addElement(sub);
+                }
+            }
+            @Override public void popupMenuWillBecomeInvisible(PopupMenuEvent e) {}
+            @Override public void popupMenuCanceled(PopupMenuEvent e) {}
+        });
+        levelFilter.addActionListener(e -> rebuild());
+        subsystemFilter.addActionListener(e -> rebuild());
+
+        // Incremental search: refilter shortly after the user stops typing
+        Timer searchDebounce = new Timer(150, e -> rebuild());
+        searchDebounce.setRepeats(false);
+        searchField.setToolTipText("Search");
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e) { searchDebounce.restart(); }
+            @Override public void removeUpdate(DocumentEvent e) { searchDebounce.restart(); }
+            @Override public void changedUpdate(DocumentEvent e) { searchDebounce.restart(); }
+        });
+
+        followBox.setSelected(true);
+        followBox.addActionListener(e -> {
+            if (followBox.isSelected()) scrollToEnd();
+        });
+        countLabel.setForeground(TXT);
+        countLabel.setFont(UI_FONT);
+
+        JLabel searchLabel = new JLabel("Search:");
+        searchLabel.setForeground(TXT);
+        searchLabel.setFont(UI_FONT);
+
+        JPanel filters = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 0));
+        filters.setBackground(BG);
+        filters.add(levelFilter);
+        filters.add(subsystemFilter);
+        filters.add(searchLabel);
+        filters.add(searchField);
+        filters.add(followBox);
+        filters.add(countLabel);
+
+        JPanel top = new JPanel(new BorderLayout());
+        top.setBackground(BG);
+        top.add(title, BorderLayout.NORTH);
+        top.add(filters, BorderLayout.SOUTH);
+        return top;
+    }
+
+    private JPanel buildButtons() {
+        JButton copyLogButton = makeButton("Copy Log");
+        JButton exportLogButton = makeButton("Export Log");
+        JButton clearLogButton = makeButton("Clear Log");
+
+        copyLogButton.addActionListener(e -> copyToClipboard());
+        exportLogButton.addActionListener(e -> exportToFile());
+        clearLogButton.addActionListener(e -> {
+            if (showDarkConfirm(SwingUtilities.getWindowAncestor(this), "Clear Log",
+                    "Are you sure you want to clear the log?")) {
+                LingleLogger.clear();
+                LingleLogger.logInfo("Log cleared by user");
+            }
+        });
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 0));
+        buttons.setBackground(BG);
+        buttons.add(copyLogButton);
+        buttons.add(exportLogButton);
+        buttons.add(clearLogButton);
+        return buttons;
+    }
+
+    private static JButton makeButton(String text) {
+        JButton b = new JButton(text);
+        b.setFocusPainted(false);
+        b.setFont(UI_FONT);
+        b.setPreferredSize(new Dimension(120, 35));
+        styleWithHover(b);
+        return b;
+    }
+
+    // ===== Filtering =====
+
+    private Set<LogEvent.Level> selectedLevels() {
+        return levelFilter.getSelectedIndex() <= 0 ? null
+                : EnumSet.of(LogEvent.Level.valueOf((String) levelFilter.getSelectedItem()));
+    }
+
+    private String selectedSubsystem() {
+        return subsystemFilter.getSelectedIndex() <= 0 ? null : (String) subsystemFilter.getSelectedItem();
+    }
+
+    private String searchText() {
+        String s = searchField.getText().trim();
+        return s.isEmpty() ? null : s.toLowerCase(Locale.ROOT);
+    }
+
+    private boolean matches(LogEvent e, Set<LogEvent.Level> levels, String subsystem, String search) {
+        if (levels != null && !levels.contains(e.getLevel())) return false;
+        if (subsystem != null && !subsystem.equals(e.getSubsystem())) return false;
+        return search == null || e.getMessage().toLowerCase(Locale.ROOT).contains(search);
+    }
+
+    /** Re-runs the current filter over everything the logger still holds. */
+    private void rebuild() {
+        Set<LogEvent.Level> levels = selectedLevels();
+        String subsystem = selectedSubsystem();
+        String search = searchText();
+
+        model.clear();
+        maxRowWidth = 0;
+        lastSeq = -1;
+        long from = LingleLogger.firstSeq();
+        List<LogEvent> page;
+        while (!(page = LingleLogger.query(levels, subsystem, from, PAGE_SIZE)).isEmpty()) {
+            for (LogEvent e : page) {
+                if (matches(e, levels, subsystem, search)) addRow(e);
+            }
+            lastSeq = page.get(page.size() - 1).getSeq();
+            from = lastSeq + 1;
+        }
+        model.publish();
+        list.setFixedCellWidth(Math.max(400, maxRowWidth + 20));
+        updateCount();
+        if (followBox.isSelected()) scrollToEnd();
+    }
+
+    private void append(List<LogEvent> events) {
+        Set<LogEvent.Level> levels = selectedLevels();
+        String subsystem = selectedSubsystem();
+        String search = searchText();
+        int widthBefore = maxRowWidth;
+
+        long first = LingleLogger.firstSeq();
+        model.dropEvicted(first);
+        for (LogEvent e : events) {
+            if (e.getSeq() <= lastSeq) continue; // already read by rebuild()
+            if (e.getSeq() < first) continue; // logged before the panel was cleared
+            lastSeq = e.getSeq();
+            if (matches(e, levels, subsystem, search)) addRow(e);
+        }
+        model.publish();
+        if (maxRowWidth > widthBefore) list.setFixedCellWidth(Math.max(400, maxRowWidth + 20));
+        updateCount();
+        if (followBox.isSelected()) scrollToEnd();
+    }
+
+    private void addRow(LogEvent e) {
+        model.add(e.getSeq());
+        maxRowWidth = Math.max(maxRowWidth, metrics.stringWidth(e.format()));
+    }
+
+    private void scrollToEnd() {
+        int last = model.getSize() - 1;
+        if (last < 0) return;
+        autoScrolling = true;
+        try {
+            list.ensureIndexIsVisible(last);
+        } finally {
+            autoScrolling = false;
+            lastScrollValue = verticalBar.getValue();
+        }
+    }
+
+    private void updateCount() {
+        countLabel.setText(model.getSize() + " lines");
+    }
+
+    // ===== Copy / export =====
+
+    // Selected rows if any, otherwise everything the current filter shows
+    private List<LogEvent> rowsForCopy() {
+        List<LogEvent> selected = new java.util.ArrayList<>(list.getSelectedValuesList());
+        selected.removeIf(java.util.Objects::isNull);
+        if (!selected.isEmpty()) return selected;
+        List<LogEvent> rows = new java.util.ArrayList<>(model.getSize());
+        for (int i = 0; i < model.getSize(); i++) {
+            LogEvent e = model.getElementAt(i);
+            if (e != null) rows.add(e);
+        }
+        return rows;
+    }
+
+    private void copyToClipboard() {
+        Window owner = SwingUtilities.getWindowAncestor(this);
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (LogEvent e : rowsForCopy()) e.appendDetailed(sb);
+            java.awt.datatransfer.StringSelection selection = new java.awt.datatransfer.StringSelection(sb.toString());
+            Toolkit.getDefaultToolkit().getSystemClipboard().setContents(selection, selection);
+            LingleLogger.logSuccess("Log copied to clipboard");
+            showDarkMessage(owner, "Success", "Log copied to clipboard");
+        } catch (Exception ex) {
+            LingleLogger.logError("Failed to copy log to clipboard", ex);
+            showDarkMessage(owner, "Error", "Failed to copy log: " + ex.getMessage());
+        }
+    }
+
+    private void exportToFile() {
+        Window owner = SwingUtilities.getWindowAncestor(this);
+        try {
+            JFileChooser fileChooser = new JFileChooser();
+            fileChooser.setDialogTitle("Export Log");
+            fileChooser.setSelectedFile(new File("lingle-log-" + System.currentTimeMillis() + ".txt"));
+            if (fileChooser.showSaveDialog(owner) != JFileChooser.APPROVE_OPTION) return;
+
+            File file = fileChooser.getSelectedFile();
+            try (BufferedWriter w = Files.newBufferedWriter(file.toPath())) {
+                StringBuilder sb = new StringBuilder();
+                for (LogEvent e : rowsForCopy()) {
+                    e.appendDetailed(sb);
+                    w.write(sb.toString());
+                    sb.setLength(0);
+                }
+            }
+            LingleLogger.logSuccess("Log exported to: " + file.getAbsolutePath());
+            showDarkMessage(owner, "Success", "Log exported to:\n" + file.getAbsolutePath());
+        } catch (Exception ex) {
+            LingleLogger.logError("Failed to export log", ex);
+            showDarkMessage(owner, "Error", "Failed to export log: " + ex.getMessage());
+        }
+    }
+
+    // ===== Model and renderer =====
+
+    /** Sequence numbers of the rows that pass the filter; events are looked up in the ring when painted. */
+    private static final class LogListModel extends AbstractListModel<LogEvent> {
+        private long[] seqs = new long[1024];
+        private int start = 0;
+        private int end = 0;
+        private int published = 0;
+
+        @Override
+        public int getSize() {
+            return published;
+        }
+
+        @Override
+        public LogEvent getElementAt(int index) {
+            return LingleLogger.get(seqs[start + index]);
+        }
+
+        void add(long seq) {
+            if (end == seqs.length) {
+                if (start > seqs.length / 2) {
+                    System.arraycopy(seqs, start, seqs, 0, end - start);
+                    end -= start;
+                    start = 0;
+                } else {
+                    seqs = Arrays.copyOf(seqs, seqs.length * 2);
+                }
+            }
+            seqs[end++] = seq;
+        }
+
+        // Fires one intervalAdded for everything added since the last publish
+        void publish() {
+            int size = end - start;
+            if (size > published) {
+                int first = published;
+                published = size;
+                fireIntervalAdded(this, first, size - 1);
+            }
+        }
+
+        void dropEvicted(long firstSeq) {
+            int drop = 0;
+            while (drop < published && seqs[start + drop] < firstSeq) drop++;
+            if (drop == 0) return;
+            start += drop;
+            published -= drop;
+            fireIntervalRemoved(this, 0, drop - 1);
+        }
+
+        void clear() {
+            int size = published;
+            start = end = published = 0;
+            if (size > 0) fireIntervalRemoved(this, 0, size - 1);
+        }
+    }
+
+    private static final class EventRenderer extends DefaultListCellRenderer {
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                      boolean isSelected, boolean cellHasFocus) {
+            LogEvent e = (LogEvent) value;
+            super.getListCellRendererComponent(list, e == null ? "" : e.format(), index, isSelected, false);
+            setBorder(BorderFactory.createEmptyBorder(0, 4, 0, 4));
+            if (!isSelected) {
+                setBackground(LOG_BG);
+                setForeground(e == null ? LOG_FG : switch (e.getLevel()) {
+                    case ERROR -> ERROR_FG;
+                    case WARN -> WARN_FG;
+                    case SUCCESS -> SUCCESS_FG;
+                    case COMMAND, ACTION -> COMMAND_FG;
+                    default -> LOG_FG;
+                });
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package flammable.bunny.core;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DownloadCache against a local stand-in for GitHub, reached through -Dlingle.github.api. The
+ * cache directory is derived from user.home when the class loads, so the home is swapped first.
+ */
+class DownloadCacheTest {
+
+    private static final Path HOME;
+
+    static {
+        try {
+            HOME = Files.createTempDirectory("lingle-cache-test");
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+        System.setProperty("user.home", HOME.toString());
+    }
+
+    private static HttpServer server;
+    private static String base;
+
+    // What the stand-in serves and what it was asked for
+    private static final Map<String, byte[]> bodies = new ConcurrentHashMap<>();
+    private static final Map<String, String> etags = new ConcurrentHashMap<>();
+    private static final Map<String, AtomicInteger> gets = new ConcurrentHashMap<>();
+    private static final List<String> ifNoneMatch = Collections.synchronizedList(new ArrayList<>());
+    private static final AtomicInteger notModified = new AtomicInteger();
+
+    @BeforeAll
+    static void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", DownloadCacheTest::handle);
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+        System.setProperty("lingle.github.api", base + "/");
+    }
+
+    @AfterAll
+    static void stopServer() throws IOException {
+        server.stop(0);
+        System.clearProperty("lingle.github.api");
+        try (Stream<Path> walk = Files.walk(HOME)) {
+            for (Path p : walk.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+
+    @BeforeEach
+    void resetServer() {
+        bodies.clear();
+        etags.clear();
+        gets.clear();
+        ifNoneMatch.clear();
+        notModified.set(0);
+    }
+
+    private static void handle(HttpExchange ex) throws IOException {
+        String path = ex.getRequestURI().getPath();
+        byte[] body = bodies.get(path);
+        try (ex) {
+            if (body == null) {
+                ex.sendResponseHeaders(404, -1);
+                return;
+            }
+            String etag = etags.get(path);
+            if (etag != null) ex.getResponseHeaders().set("ETag", etag);
+            if (ex.getRequestMethod().equals("HEAD")) {
+                ex.sendResponseHeaders(200, -1);
+                return;
+            }
+            gets.computeIfAbsent(path, k -> new AtomicInteger()).incrementAndGet();
+            String sent = ex.getRequestHeaders().getFirst("If-None-Match");
+            if (sent != null) ifNoneMatch.add(sent);
+            if (etag != null && etag.equals(sent)) {
+                notModified.incrementAndGet();
+                ex.sendResponseHeaders(304, -1);
+                return;
+            }
+            ex.sendResponseHeaders(200, body.length);
+            try (OutputStream out = ex.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private static void serve(String path, String body, String etag) {
+        bodies.put(path, body.getBytes(StandardCharsets.UTF_8));
+        if (etag != null) etags.put(path, etag);
+    }
+
+    private static int getsFor(String path) {
+        AtomicInteger n = gets.get(path);
+        return n != null ? n.get() : 0;
+    }
+
+    private static String sha256(String s) {
+        return HexFormat.of().formatHex(DownloadCache.newDigest().digest(s.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void apiBaseComesFromProperty() {
+        assertEquals(base, DownloadCache.githubApiBase());
+    }
+
+    @Test
+    void unchangedReleaseIsRevalidatedWithItsEtag() throws Exception {
+        serve("/repos/owner/unchanged/releases/latest", "{\"tag_name\":\"v1\"}", "\"etag-1\"");
+
+        JSONObject first = DownloadCache.latestRelease("owner/unchanged");
+        JSONObject second = DownloadCache.latestRelease("owner/unchanged");
+
+        assertEquals("v1", first.getString("tag_name"));
+        assertEquals("v1", second.getString("tag_name"));
+        assertEquals(List.of("\"etag-1\""), ifNoneMatch, "only the second request revalidates");
+        assertEquals(1, notModified.get(), "the second request is answered with 304");
+    }
+
+    @Test
+    void changedReleaseReplacesCachedCopyAndEtag() throws Exception {
+        String path = "/repos/owner/changed/releases/latest";
+        serve(path, "{\"tag_name\":\"v1\"}", "\"etag-1\"");
+        DownloadCache.latestRelease("owner/changed");
+
+        serve(path, "{\"tag_name\":\"v2\"}", "\"etag-2\"");
+        assertEquals("v2", DownloadCache.latestRelease("owner/changed").getString("tag_name"));
+        assertEquals("v2", DownloadCache.latestRelease("owner/changed").getString("tag_name"));
+
+        assertEquals(List.of("\"etag-1\"", "\"etag-2\""), ifNoneMatch, "the new ETag is sent after a change");
+        assertEquals(1, notModified.get());
+        assertEquals(3, getsFor(path));
+    }
+
+    @Test
+    void artifactIsDownloadedOnceAndReusedByUrl() throws Exception {
+        serve("/dl/tool-1.0.jar", "jar contents", null);
+        Path first = HOME.resolve("targets/a/tool.jar");
+        Path second = HOME.resolve("targets/b/tool.jar");
+
+        DownloadCache.fetchArtifact(base + "/dl/tool-1.0.jar", null, first);
+        DownloadCache.fetchArtifact(base + "/dl/tool-1.0.jar", null, second);
+
+        assertEquals("jar contents", Files.readString(first));
+        assertEquals("jar contents", Files.readString(second));
+        assertEquals(1, getsFor("/dl/tool-1.0.jar"));
+    }
+
+    @Test
+    void blobIsReusedByHashAcrossUrls() throws Exception {
+        String contents = "mirrored artifact";
+        String sha = sha256(contents);
+        serve("/dl/original.zip", contents, null);
+        serve("/mirror/copy.zip", contents, null);
+
+        Path blob = DownloadCache.fetchBlob(base + "/dl/original.zip", sha, null);
+        Path reused = DownloadCache.fetchBlob(base + "/mirror/copy.zip", sha.toUpperCase(), null);
+
+        assertEquals(blob, reused);
+        assertEquals(sha, blob.getFileName().toString());
+        assertEquals(1, getsFor("/dl/original.zip"));
+        assertEquals(0, getsFor("/mirror/copy.zip"), "a known hash is never downloaded again");
+    }
+
+    @Test
+    void installedArtifactIsACopyOfTheBlob() throws Exception {
+        String contents = "pristine jar";
+        serve("/dl/copied.jar", contents, null);
+        Path target = HOME.resolve("targets/copied/tool.jar");
+
+        DownloadCache.fetchArtifact(base + "/dl/copied.jar", sha256(contents), target);
+        Files.writeString(target, "edited in place", StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        Path blob = DownloadCache.fetchBlob(base + "/dl/copied.jar", sha256(contents), null);
+        assertEquals(contents, Files.readString(blob), "editing the installed file leaves the blob alone");
+        assertEquals(1, getsFor("/dl/copied.jar"));
+    }
+
+    @Test
+    void pruneDropsStaleBlobsAndMetadata() throws Exception {
+        Path cache = HOME.resolve(".local/share/lingle/cache/downloads");
+        Path stale = Files.writeString(Files.createDirectories(cache.resolve("blobs")).resolve("stale-blob"), "old");
+        Path kept = Files.writeString(cache.resolve("blobs/kept-blob"), "old but protected");
+        Path fresh = Files.writeString(cache.resolve("blobs/fresh-blob"), "new");
+        Path staleMeta = Files.writeString(Files.createDirectories(cache.resolve("meta")).resolve("stale.json"), "{}");
+        long now = System.currentTimeMillis();
+        FileTime old = FileTime.fromMillis(now - TimeUnit.DAYS.toMillis(90));
+        for (Path p : List.of(stale, kept, staleMeta)) Files.setLastModifiedTime(p, old);
+
+        DownloadCache.prune(now, kept);
+
+        assertFalse(Files.exists(stale));
+        assertFalse(Files.exists(staleMeta));
+        assertTrue(Files.exists(kept));
+        assertTrue(Files.exists(fresh));
+    }
+
+    @Test
+    void downloadWithWrongHashIsRejected() {
+        serve("/dl/tampered.zip", "unexpected bytes", null);
+
+        assertThrows(IOException.class,
+                () -> DownloadCache.fetchBlob(base + "/dl/tampered.zip", sha256("expected bytes"), null));
+        assertFalse(Files.exists(HOME.resolve(".local/share/lingle/cache/downloads/blobs").resolve(sha256("unexpected bytes"))));
+    }
+}